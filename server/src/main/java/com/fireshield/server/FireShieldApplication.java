@@ -2,8 +2,10 @@ package com.fireshield.server;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FireShieldApplication {
   public static void main(String[] args) {
     SpringApplication.run(FireShieldApplication.class, args);
@@ -0,0 +1,110 @@
+package com.fireshield.server.api;
+
+import com.fireshield.server.api.dto.ImportResponse;
+import com.fireshield.server.domain.Device;
+import com.fireshield.server.repo.DeviceRepository;
+import com.fireshield.server.service.HotSampleTier;
+import com.fireshield.server.service.ReportSnapshots;
+import com.fireshield.server.service.RollupService;
+import com.fireshield.server.service.SampleArchiveService;
+import com.fireshield.server.service.SampleImportService;
+import com.fireshield.server.service.SampleImportService.ImportFile;
+import com.fireshield.server.service.SamplePartitionService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+/** Operator endpoints; ROLE_ADMIN only (see SecurityConfig). */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+  private final RollupService rollups;
+  private final SamplePartitionService partitions;
+  private final HotSampleTier hot;
+  private final ReportSnapshots reports;
+  private final SampleArchiveService archive;
+  private final SampleImportService imports;
+  private final DeviceRepository devices;
+
+  public AdminController(RollupService rollups, SamplePartitionService partitions, HotSampleTier hot,
+                         ReportSnapshots reports, SampleArchiveService archive,
+                         SampleImportService imports, DeviceRepository devices) {
+    this.rollups = rollups;
+    this.partitions = partitions;
+    this.hot = hot;
+    this.reports = reports;
+    this.archive = archive;
+    this.imports = imports;
+    this.devices = devices;
+  }
+
+  // POST /admin/rollups/rebuild?from=2025-01-01T00:00:00Z&to=...&deviceId=...
+  @PostMapping("/rollups/rebuild")
+  public Map<String, Object> rebuildRollups(
+      @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(name = "deviceId", required = false) UUID deviceId
+  ) {
+    Instant end = (to == null) ? Instant.now() : to;
+    Instant start = (from == null) ? end.minus(7, ChronoUnit.DAYS) : from;
+    int rows = rollups.rebuild(start, end, deviceId);
+    return Map.of("from", start, "to", end, "rollupRows", rows);
+  }
+
+  // GET /admin/samples/partitions -> partition count and whether a 24 h window query prunes
+  @GetMapping("/samples/partitions")
+  public Map<String, Object> partitions() {
+    return partitions.checkPruning();
+  }
+
+  // GET /admin/hot-tier -> samples and bytes held in memory, per device
+  @GetMapping("/hot-tier")
+  public Map<String, Object> hotTier() {
+    return hot.footprint();
+  }
+
+  // GET /admin/reports/snapshots -> scopes kept warm and pending refreshes
+  @GetMapping("/reports/snapshots")
+  public Map<String, Object> reportSnapshots() {
+    return reports.status();
+  }
+
+  // GET /admin/archive -> cold-tier segments, rows and bytes per row
+  @GetMapping("/archive")
+  public Map<String, Object> archive() {
+    return archive.status();
+  }
+
+  // POST /admin/archive/run -> archive every day past the writable horizon now instead of at the nightly run
+  @PostMapping("/archive/run")
+  public Map<String, Object> runArchive() {
+    archive.run();
+    return archive.status();
+  }
+
+  // POST /admin/import/samples (multipart: files=@a.csv files=@b.csv, optional deviceKey for files without a device column)
+  @PostMapping(value = "/import/samples", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+  public ImportResponse importSamples(
+      @RequestParam("files") MultipartFile[] files,
+      @RequestParam(name = "deviceKey", required = false) String deviceKey
+  ) {
+    if (files.length == 0) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "no files");
+    Device device = null;
+    if (deviceKey != null && !deviceKey.isBlank()) {
+      device = devices.findByDeviceKey(deviceKey)
+          .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown device key"));
+    }
+    return imports.importFiles(Arrays.stream(files)
+        .map(f -> new ImportFile(f.getOriginalFilename() == null ? f.getName() : f.getOriginalFilename(), f))
+        .toList(), device);
+  }
+}
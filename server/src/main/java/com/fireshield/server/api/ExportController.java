@@ -0,0 +1,62 @@
+// api/ExportController.java
+package com.fireshield.server.api;
+
+import com.fireshield.server.service.DeviceScope;
+import com.fireshield.server.service.DeviceScopeResolver;
+import com.fireshield.server.service.SampleExportService;
+import com.fireshield.server.service.SampleExportService.Format;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+  private final SampleExportService export;
+  private final DeviceScopeResolver scopes;
+
+  public ExportController(SampleExportService export, DeviceScopeResolver scopes) {
+    this.export = export;
+    this.scopes = scopes;
+  }
+
+  // GET /export/samples?from=2025-01-01T00:00:00Z&to=...&format=csv|ndjson&gzip=true[&deviceId=...]
+  // Written straight to the response as rows are read; defaults to the last 7 days.
+  @GetMapping("/samples")
+  public void samples(
+      Authentication auth,
+      @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(name = "format", defaultValue = "csv") String format,
+      @RequestParam(name = "gzip", defaultValue = "false") boolean gzip,
+      @RequestParam(name = "deviceId", required = false) UUID deviceId,
+      HttpServletResponse response
+  ) throws IOException {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    Format fmt;
+    try {
+      fmt = Format.valueOf(format.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be csv or ndjson");
+    }
+    Instant end = (to == null) ? Instant.now() : to;
+    Instant start = (from == null) ? end.minus(7, ChronoUnit.DAYS) : from;
+    if (!start.isBefore(end)) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+
+    String name = "samples." + (fmt == Format.CSV ? "csv" : "ndjson") + (gzip ? ".gz" : "");
+    response.setContentType(gzip ? "application/gzip" : (fmt == Format.CSV ? "text/csv" : "application/x-ndjson"));
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"");
+    export.export(scope, start, end, fmt, gzip, response.getOutputStream());
+  }
+}
@@ -1,30 +1,53 @@
 package com.fireshield.server.api;
 
-import com.fireshield.server.api.dto.InsightsReport;
+import com.fireshield.server.service.DeviceScope;
+import com.fireshield.server.service.DeviceScopeResolver;
 import com.fireshield.server.service.InsightsService;
+import com.fireshield.server.service.ReportSnapshots;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/insights")
 public class InsightsController {
 
   private final InsightsService insights;
+  private final DeviceScopeResolver scopes;
+  private final ReportSnapshots snapshots;
 
-  public InsightsController(InsightsService insights) {
+  public InsightsController(InsightsService insights, DeviceScopeResolver scopes, ReportSnapshots snapshots) {
     this.insights = insights;
+    this.scopes = scopes;
+    this.snapshots = snapshots;
   }
 
-  // Existing: GET /insights or /insights?hours=168
+  // Existing: GET /insights or /insights?hours=168 (optionally &deviceId=...)
+  // Not in ResponseCache: the model result cache already reuses answers, and the
+  // cached/cacheAgeSeconds fields must describe this response, not a stored one.
   @GetMapping
-  public Map<String,Object> insights(@RequestParam(name="hours", required=false) Integer hours) {
-    return insights.generateInsights(hours);
+  public Map<String, Object> insights(Authentication auth,
+                                      @RequestParam(name="hours", required=false) Integer hours,
+                                      @RequestParam(name="deviceId", required=false) UUID deviceId) {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    return insights.generateInsights(hours, scope);
   }
 
-  // NEW: GET /insights/report or /insights/report?hours=24
+  // NEW: GET /insights/report or /insights/report?hours=24 (optionally &deviceId=...)
+  // Precomputed windows (24h, 168h) come from the latest snapshot; others are computed per request.
   @GetMapping("/report")
-  public InsightsReport awarenessReport(@RequestParam(name="hours", required=false) Integer hours) {
-    return insights.generateAwarenessReport(hours);
+  public ResponseEntity<?> awarenessReport(Authentication auth,
+                                           @RequestParam(name="hours", required=false) Integer hours,
+                                           @RequestParam(name="deviceId", required=false) UUID deviceId) {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    int h = (hours == null || hours <= 0) ? 24 : hours;
+    if (snapshots.handles(h)) {
+      ReportSnapshots.Served s = snapshots.get(scope, h);
+      return ResponseEntity.ok().header("X-Report-Snapshot", s.source().name()).body(s.report());
+    }
+    return ResponseEntity.ok(insights.generateAwarenessReport(hours, scope));
   }
 }
@@ -0,0 +1,34 @@
+package com.fireshield.server.api;
+
+import com.fireshield.server.service.DeviceScope;
+import com.fireshield.server.service.DeviceScopeResolver;
+import com.fireshield.server.service.LiveStreamService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/stream")
+public class LiveController {
+  private final LiveStreamService live;
+  private final DeviceScopeResolver scopes;
+
+  public LiveController(LiveStreamService live, DeviceScopeResolver scopes) {
+    this.live = live;
+    this.scopes = scopes;
+  }
+
+  // GET /stream (all of the caller's devices) or /stream?deviceId=...
+  @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter stream(Authentication auth,
+                           @RequestParam(name = "deviceId", required = false) UUID deviceId) {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    if (scope.isEmpty()) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No devices to stream");
+    return live.subscribe(scope.deviceIds());
+  }
+}
@@ -1,17 +1,34 @@
 // api/MetricsController.java
 package com.fireshield.server.api;
 
+import com.fireshield.server.service.DeviceScope;
+import com.fireshield.server.service.DeviceScopeResolver;
 import com.fireshield.server.service.MetricsService;
+import com.fireshield.server.service.ResponseCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 public class MetricsController {
   private final MetricsService metrics;
-  public MetricsController(MetricsService metrics) { this.metrics = metrics; }
+  private final DeviceScopeResolver scopes;
+  private final ResponseCache cache;
+  public MetricsController(MetricsService metrics, DeviceScopeResolver scopes, ResponseCache cache) {
+    this.metrics = metrics;
+    this.scopes = scopes;
+    this.cache = cache;
+  }
 
+  // GET /metrics (all of the caller's devices) or /metrics?deviceId=...
   @GetMapping("/metrics")
-  public Map<String,Object> metrics() { return metrics.overview(); }
+  public ResponseEntity<byte[]> metrics(Authentication auth,
+                                        @RequestParam(name = "deviceId", required = false) UUID deviceId) {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    return cache.json("/metrics", "", scope, () -> metrics.overview(scope));
+  }
 
   @GetMapping("/health")
   public Map<String, Object> health() { return Map.of("status","UP"); }
@@ -2,17 +2,92 @@
 package com.fireshield.server.api;
 
 import com.fireshield.server.api.dto.*;
+import com.fireshield.server.config.DeviceKeyFilter;
+import com.fireshield.server.domain.Device;
+import com.fireshield.server.service.BackfillService;
+import com.fireshield.server.service.DeviceScopeResolver;
+import com.fireshield.server.service.IngestBackpressureException;
 import com.fireshield.server.service.IngestService;
+import com.fireshield.server.service.SampleFrameReader;
+import com.fireshield.server.service.SamplePageService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
 
 @RestController
 public class SampleController {
   private final IngestService ingest;
-  public SampleController(IngestService ingest) { this.ingest = ingest; }
+  private final BackfillService backfill;
+  private final SamplePageService pages;
+  private final DeviceScopeResolver scopes;
+  public SampleController(IngestService ingest, BackfillService backfill, SamplePageService pages,
+                          DeviceScopeResolver scopes) {
+    this.ingest = ingest;
+    this.backfill = backfill;
+    this.pages = pages;
+    this.scopes = scopes;
+  }
 
   @PostMapping("/samples")
-  public IngestResponse postSamples(@Valid @RequestBody SampleBatchRequest body) {
-    return ingest.ingest(body);
+  public IngestResponse postSamples(@RequestAttribute(DeviceKeyFilter.DEVICE_ATTRIBUTE) Device device,
+                                    @Valid @RequestBody SampleBatchRequest body) {
+    return ingest.ingest(device, body);
+  }
+
+  // Compact binary upload; layout documented on SampleFrameReader
+  @PostMapping(path = "/samples", consumes = SampleFrameReader.CONTENT_TYPE)
+  public IngestResponse postSampleFrame(@RequestAttribute(DeviceKeyFilter.DEVICE_ATTRIBUTE) Device device,
+                                        HttpServletRequest request) throws IOException {
+    return ingest.ingestFrame(device, request.getInputStream());
+  }
+
+  // Uncapped NDJSON backfill: one SamplePoint per line, committed in chunks
+  @PostMapping(path = "/samples/stream", consumes = BackfillService.CONTENT_TYPE)
+  public BackfillResponse streamSamples(@RequestAttribute(DeviceKeyFilter.DEVICE_ATTRIBUTE) Device device,
+                                        HttpServletRequest request) throws IOException {
+    return backfill.ingest(device, request.getInputStream());
+  }
+
+  // GET /samples?deviceId=...[&from=...&to=...][&order=desc|asc][&limit=100][&cursor=...]
+  // Raw readings of one device, a keyset page at a time; defaults to the last 7 days, newest first.
+  @GetMapping("/samples")
+  public SamplePage listSamples(
+      Authentication auth,
+      @RequestParam(name = "deviceId") UUID deviceId,
+      @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(name = "order", defaultValue = "desc") String order,
+      @RequestParam(name = "limit", required = false) Integer limit,
+      @RequestParam(name = "cursor", required = false) String cursor
+  ) {
+    scopes.resolve(auth, deviceId);   // 403 unless the caller owns the device
+    String o = order.toLowerCase(Locale.ROOT);
+    if (!o.equals("asc") && !o.equals("desc")) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "order must be asc or desc");
+    }
+    Instant end = (to == null) ? Instant.now() : to;
+    Instant start = (from == null) ? end.minus(7, ChronoUnit.DAYS) : from;
+    if (!start.isBefore(end)) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+    return pages.page(deviceId, start, end, o.equals("desc"), limit, cursor);
+  }
+
+  @ExceptionHandler(IngestBackpressureException.class)
+  public ResponseEntity<Map<String, Object>> backpressure(IngestBackpressureException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+        .body(Map.of("error", e.getMessage()));
   }
 }
@@ -1,33 +1,74 @@
 package com.fireshield.server.api;
 
-import com.fireshield.server.api.dto.TimePoint;
+import com.fireshield.server.service.DeviceScope;
+import com.fireshield.server.service.DeviceScopeResolver;
+import com.fireshield.server.service.ResponseCache;
 import com.fireshield.server.service.SeriesService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/series")
 public class SeriesController {
   private final SeriesService svc;
+  private final DeviceScopeResolver scopes;
+  private final ResponseCache cache;
 
-  public SeriesController(SeriesService svc) {
+  public SeriesController(SeriesService svc, DeviceScopeResolver scopes, ResponseCache cache) {
     this.svc = svc;
+    this.scopes = scopes;
+    this.cache = cache;
   }
 
-  // GET /series?hours=24&bucket=hour
+  // GET /series?hours=24&bucket=hour[&maxPoints=300][&deviceId=...]
   @GetMapping
-  public List<TimePoint> series(
+  public ResponseEntity<byte[]> series(
+      Authentication auth,
       @RequestParam(name = "hours", required = false) Integer hours,
-      @RequestParam(name = "bucket", required = false) String bucket
+      @RequestParam(name = "bucket", required = false) String bucket,
+      @RequestParam(name = "maxPoints", required = false) Integer maxPoints,
+      @RequestParam(name = "deviceId", required = false) UUID deviceId
   ) {
-    return svc.getSeries(hours, bucket);
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    return cache.json("/series", "hours=" + hours + "&bucket=" + bucket + "&maxPoints=" + maxPoints, scope,
+        () -> svc.getSeries(hours, bucket, maxPoints, scope));
   }
-    // GET /series/daily?days=7
+  // GET /series/percentiles?hours=24&bucket=hour[&deviceId=...] -> avg + p50/p95/p99 per bucket
+  @GetMapping("/percentiles")
+  public ResponseEntity<byte[]> percentiles(
+      Authentication auth,
+      @RequestParam(name = "hours", required = false) Integer hours,
+      @RequestParam(name = "bucket", required = false) String bucket,
+      @RequestParam(name = "deviceId", required = false) UUID deviceId
+  ) {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    return cache.json("/series/percentiles", "hours=" + hours + "&bucket=" + bucket, scope,
+        () -> svc.getPercentiles(hours, bucket, scope));
+  }
+  // GET /series/multi?hours=24&width=15m&channels=tvoc,formaldehyde,benzene[&deviceId=...]
+  @GetMapping("/multi")
+  public ResponseEntity<byte[]> multi(
+      Authentication auth,
+      @RequestParam(name = "hours", required = false) Integer hours,
+      @RequestParam(name = "width", required = false) String width,
+      @RequestParam(name = "channels", required = false) String channels,
+      @RequestParam(name = "deviceId", required = false) UUID deviceId
+  ) {
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    return cache.json("/series/multi", "hours=" + hours + "&width=" + width + "&channels=" + channels, scope,
+        () -> svc.getMulti(hours, width, channels, scope));
+  }
+    // GET /series/daily?days=7[&deviceId=...]
   @GetMapping("/daily")
-  public List<TimePoint> seriesDaily(
-      @RequestParam(name = "days", required = false) Integer days
+  public ResponseEntity<byte[]> seriesDaily(
+      Authentication auth,
+      @RequestParam(name = "days", required = false) Integer days,
+      @RequestParam(name = "deviceId", required = false) UUID deviceId
   ) {
-    return svc.getSeriesDaily(days);
+    DeviceScope scope = scopes.resolve(auth, deviceId);
+    return cache.json("/series/daily", "days=" + days, scope, () -> svc.getSeriesDaily(days, scope));
   }
 }
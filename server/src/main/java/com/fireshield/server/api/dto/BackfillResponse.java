@@ -0,0 +1,19 @@
+package com.fireshield.server.api.dto;
+
+import java.util.List;
+
+/**
+ * Result of a streamed NDJSON backfill (POST /samples/stream).
+ * Only the first few rejects are listed; {@code rejected} is always the full count.
+ */
+public record BackfillResponse(
+    long lines,
+    long accepted,
+    long rejected,
+    long duplicates,
+    int chunks,
+    List<LineReject> rejects,
+    boolean rejectsTruncated
+) {
+  public record LineReject(long line, String reason) {}
+}
@@ -0,0 +1,36 @@
+package com.fireshield.server.api.dto;
+
+import com.fireshield.server.api.dto.BackfillResponse.LineReject;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Result of a bulk CSV import (POST /admin/import/samples): per file and in total.
+ * Only the first few rejects per file are listed; {@code rejected} is always the full count.
+ * Rows stamped before {@code writableFrom} are rejected: those days are archived or past
+ * retention (null if neither applies).
+ */
+public record ImportResponse(
+    List<FileResult> files,
+    long lines,
+    long inserted,
+    long duplicates,
+    long rejected,
+    int rollupRows,       // rollup rows rebuilt for the imported ranges
+    long millis,
+    long rowsPerSecond,   // inserted rows over the whole import, rollups included
+    Instant writableFrom
+) {
+  public record FileResult(
+      String file,
+      long lines,
+      long inserted,
+      long duplicates,      // already stored, or repeated within the import
+      long rejected,
+      List<LineReject> rejects,
+      boolean rejectsTruncated,
+      long millis,
+      String error          // set if the file was rolled back as a whole
+  ) {}
+}
@@ -1,9 +1,11 @@
 package com.fireshield.server.api.dto;
 
 /**
- * Simple response showing how many samples were accepted/rejected.
+ * Simple response showing how many samples were accepted/rejected,
+ * and how many were dropped as duplicates of an already stored (device, ts).
  */
 public record IngestResponse(
     int accepted,
-    int rejected
+    int rejected,
+    int duplicates
 ) {}
@@ -8,7 +8,9 @@ public record InsightsReport(
     Map<String, Object> metrics,   // computed metrics fed to the model
     AiReport aiReport,             // structured Gemini output
     String model,                  // model actually used
-    String source                  // "model" or "fallback"
+    String source,                 // "model" or "fallback"
+    boolean cached,                // served from the model result cache (or a shared in-flight call)
+    long cacheAgeSeconds           // age of that result; 0 when freshly generated
 ) {
   public record AiReport(
       String summary,                 // 2–3 sentences
@@ -0,0 +1,17 @@
+package com.fireshield.server.api.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One event on the live stream (GET /stream).
+ * type is "sample" (data = SamplePoint) or "alert" (data = Alert payload).
+ */
+public record LiveEvent(
+    String type,
+    UUID deviceId,
+    Instant ts,
+    Object data
+) {
+  public record AlertData(String level, String from, String message, Double tvoc_ppb) {}
+}
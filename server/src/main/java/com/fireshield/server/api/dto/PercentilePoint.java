@@ -0,0 +1,6 @@
+package com.fireshield.server.api.dto;
+
+import java.time.Instant;
+
+/** One /series/percentiles bucket: mean and sketch-estimated TVOC percentiles (within 1%). */
+public record PercentilePoint(Instant ts, long count, Double tvoc_ppb, Double p50, Double p95, Double p99) {}
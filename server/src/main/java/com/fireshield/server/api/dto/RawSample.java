@@ -0,0 +1,16 @@
+package com.fireshield.server.api.dto;
+
+import java.time.Instant;
+
+/** One stored sample as listed by GET /samples; field names as in SamplePoint, null where not measured. */
+public record RawSample(
+    long id,
+    Instant ts,
+    Double tvoc_ppb,
+    Double voc_index,
+    Double eco2_ppm,
+    Double hum_rel,
+    Double temp_c,
+    Double formaldehyde_ppm,
+    Double benzene_ppm
+) {}
@@ -0,0 +1,6 @@
+package com.fireshield.server.api.dto;
+
+import java.util.List;
+
+/** One page of GET /samples; pass {@code nextCursor} back as {@code cursor} for the next, null on the last page. */
+public record SamplePage(List<RawSample> items, String nextCursor) {}
@@ -0,0 +1,14 @@
+package com.fireshield.server.api.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * One /series/multi bucket: sample count plus reading count and avg/min/max per
+ * requested channel (keyed by column name, e.g. tvoc_ppb). Empty buckets have count 0
+ * and null stats.
+ */
+public record SeriesBucket(Instant ts, long count, Map<String, ChannelStats> channels) {
+
+  public record ChannelStats(long count, Double avg, Double min, Double max) {}
+}
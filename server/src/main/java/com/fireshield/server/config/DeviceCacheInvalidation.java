@@ -0,0 +1,65 @@
+// config/DeviceCacheInvalidation.java
+package com.fireshield.server.config;
+
+import com.fireshield.server.domain.Device;
+import com.fireshield.server.service.DeviceCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops {@link DeviceCache} entries whenever a {@link Device} is inserted, updated or
+ * deleted through JPA. Registered with Hibernate's event registry here, so the entity
+ * itself carries no listener and the domain package stays free of service classes.
+ */
+@Component
+public class DeviceCacheInvalidation
+    implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+  private final EntityManagerFactory emf;
+  private final DeviceCache cache;
+
+  public DeviceCacheInvalidation(EntityManagerFactory emf, DeviceCache cache) {
+    this.emf = emf;
+    this.cache = cache;
+  }
+
+  @PostConstruct
+  void register() {
+    EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+        .getServiceRegistry().getService(EventListenerRegistry.class);
+    registry.appendListeners(EventType.POST_INSERT, this);
+    registry.appendListeners(EventType.POST_UPDATE, this);
+    registry.appendListeners(EventType.POST_DELETE, this);
+  }
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    if (event.getEntity() instanceof Device d) cache.invalidate(d);
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    if (event.getEntity() instanceof Device d) cache.invalidate(d);
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    if (event.getEntity() instanceof Device d) cache.invalidate(d);
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    return false;
+  }
+}
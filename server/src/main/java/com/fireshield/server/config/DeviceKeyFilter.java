@@ -1,19 +1,24 @@
 // src/main/java/com/fireshield/server/config/DeviceKeyFilter.java
 package com.fireshield.server.config;
 
-import com.fireshield.server.repo.DeviceRepository;
+import com.fireshield.server.domain.Device;
+import com.fireshield.server.service.DeviceCache;
 import jakarta.servlet.*;
 import jakarta.servlet.http.*;
 import org.springframework.http.HttpStatus;
 
 import java.io.IOException;
+import java.util.Optional;
 
 public class DeviceKeyFilter extends GenericFilter {
 
-  private final DeviceRepository devices;
+  /** Request attribute holding the authenticated {@link Device} for the ingest handlers. */
+  public static final String DEVICE_ATTRIBUTE = "com.fireshield.server.config.DeviceKeyFilter.device";
+
+  private final DeviceCache devices;
   private final String headerName;
 
-  public DeviceKeyFilter(DeviceRepository devices, String headerName) {
+  public DeviceKeyFilter(DeviceCache devices, String headerName) {
     this.devices = devices;
     this.headerName = headerName;
   }
@@ -25,18 +30,20 @@ public class DeviceKeyFilter extends GenericFilter {
     HttpServletRequest req = (HttpServletRequest) request;
     HttpServletResponse res = (HttpServletResponse) response;
 
-    // Only guard POST /samples
+    // Only guard the ingest endpoints: POST /samples and POST /samples/stream
     String path = req.getServletPath(); // safer than getRequestURI for context-path situations
-    if ("POST".equalsIgnoreCase(req.getMethod()) && "/samples".equals(path)) {
+    if ("POST".equalsIgnoreCase(req.getMethod()) && ("/samples".equals(path) || "/samples/stream".equals(path))) {
       String key = req.getHeader(headerName);
       if (key == null || key.isBlank()) {
         res.sendError(HttpStatus.UNAUTHORIZED.value(), "Missing device key");
         return;
       }
-      if (devices.findByDeviceKey(key).isEmpty()) {
+      Optional<Device> device = devices.findByKey(key);
+      if (device.isEmpty()) {
         res.sendError(HttpStatus.UNAUTHORIZED.value(), "Invalid device key");
         return;
       }
+      req.setAttribute(DEVICE_ATTRIBUTE, device.get());
     }
     chain.doFilter(request, response);
   }
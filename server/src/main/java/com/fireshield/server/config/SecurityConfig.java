@@ -1,7 +1,7 @@
 // src/main/java/com/fireshield/server/config/SecurityConfig.java
 package com.fireshield.server.config;
 
-import com.fireshield.server.repo.DeviceRepository;
+import com.fireshield.server.service.DeviceCache;
 import com.fireshield.server.service.JwtService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
@@ -18,12 +18,12 @@ import java.util.List;
 @EnableWebSecurity
 public class SecurityConfig {
   private final JwtService jwt;
-  private final DeviceRepository devices;
+  private final DeviceCache devices;
   private final String ingestHeader;
   private final List<String> allowedOrigins;
 
   public SecurityConfig(
-      JwtService jwt, DeviceRepository devices,
+      JwtService jwt, DeviceCache devices,
       @Value("${app.ingest.device-header}") String ingestHeader,
       @Value("${app.cors.allowed-origins}") String allowedOriginsCsv
   ) {
@@ -41,7 +41,8 @@ public class SecurityConfig {
         .authorizeHttpRequests(reg -> reg
             .requestMatchers("/health", "/actuator/health").permitAll()
             .requestMatchers(HttpMethod.POST, "/auth/**").permitAll()     // wildcard for auth endpoints
-            .requestMatchers(HttpMethod.POST, "/samples").permitAll()     // guarded by DeviceKeyFilter
+            .requestMatchers(HttpMethod.POST, "/samples", "/samples/stream").permitAll()     // guarded by DeviceKeyFilter
+            .requestMatchers("/admin/**").hasRole("ADMIN")
             .anyRequest().authenticated()
         )
         .addFilterBefore(new DeviceKeyFilter(devices, ingestHeader),
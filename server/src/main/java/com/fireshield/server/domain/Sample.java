@@ -4,7 +4,8 @@ package com.fireshield.server.domain;
 import jakarta.persistence.*;
 import java.time.Instant;
 
-@Entity @Table(name="samples")
+@Entity @Table(name="samples",
+    uniqueConstraints = @UniqueConstraint(name="uq_samples_device_ts", columnNames={"device_id","ts"}))
 public class Sample {
   @Id @GeneratedValue(strategy=GenerationType.IDENTITY) private Long id;
 
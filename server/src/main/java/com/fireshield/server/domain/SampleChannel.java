@@ -0,0 +1,28 @@
+// domain/SampleChannel.java
+package com.fireshield.server.domain;
+
+/**
+ * The measurement columns of {@link Sample}, in table order.
+ * Used by the JDBC write path so the column list lives in one place.
+ */
+public enum SampleChannel {
+  TVOC("tvoc_ppb"),
+  VOC_INDEX("voc_index"),
+  ECO2("eco2_ppm"),
+  HUMIDITY("hum_rel"),
+  TEMP("temp_c"),
+  FORMALDEHYDE("formaldehyde_ppm"),
+  BENZENE("benzene_ppm");
+
+  private static final SampleChannel[] ALL = values();
+
+  private final String column;
+
+  SampleChannel(String column) { this.column = column; }
+
+  public String column() { return column; }
+
+  public static SampleChannel[] all() { return ALL; }
+
+  public static int count() { return ALL.length; }
+}
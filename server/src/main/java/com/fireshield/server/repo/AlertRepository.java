@@ -2,5 +2,9 @@
 package com.fireshield.server.repo;
 import com.fireshield.server.domain.Alert;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Optional;
+import java.util.UUID;
 
-public interface AlertRepository extends JpaRepository<Alert, Long> {}
+public interface AlertRepository extends JpaRepository<Alert, Long> {
+  Optional<Alert> findFirstByDeviceIdOrderByTsDesc(UUID deviceId);
+}
@@ -2,9 +2,15 @@
 package com.fireshield.server.repo;
 import com.fireshield.server.domain.Device;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface DeviceRepository extends JpaRepository<Device, UUID> {
   Optional<Device> findByDeviceKey(String deviceKey);
+
+  @Query("select d.id from Device d where d.owner.id = :ownerId")
+  List<UUID> findIdsByOwnerId(@Param("ownerId") UUID ownerId);
 }
@@ -0,0 +1,102 @@
+// repo/SampleBatch.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.domain.SampleChannel;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Column-oriented buffer of samples waiting to be written.
+ * Timestamps are epoch microseconds (Postgres timestamptz precision), channel values are
+ * primitive doubles with a per-row presence mask, so filling a batch never boxes.
+ * Each row carries a {@link #status(int)} that the writer fills in.
+ */
+public final class SampleBatch {
+
+  public static final byte PENDING = 0;
+  public static final byte STORED  = 1;
+  public static final byte FAILED  = 2;
+  /** Same (device_id, ts) already stored, or repeated earlier in the batch. */
+  public static final byte DUPLICATE = 3;
+
+  private final int capacity;
+  private final UUID[] deviceIds;
+  private final long[] tsMicros;
+  private final double[][] values;   // [channel][row]
+  private final int[] presence;      // bit i set -> channel i present
+  private final byte[] status;
+  private int size;
+
+  public SampleBatch(int capacity) {
+    this.capacity = Math.max(1, capacity);
+    this.deviceIds = new UUID[this.capacity];
+    this.tsMicros = new long[this.capacity];
+    this.values = new double[SampleChannel.count()][this.capacity];
+    this.presence = new int[this.capacity];
+    this.status = new byte[this.capacity];
+  }
+
+  /** Appends an empty row and returns its index. */
+  public int append(UUID deviceId, long tsMicros) {
+    if (size == capacity) throw new IllegalStateException("SampleBatch is full");
+    int row = size++;
+    deviceIds[row] = deviceId;
+    this.tsMicros[row] = tsMicros;
+    presence[row] = 0;
+    status[row] = PENDING;
+    return row;
+  }
+
+  public void put(int row, SampleChannel ch, double v) {
+    values[ch.ordinal()][row] = v;
+    presence[row] |= 1 << ch.ordinal();
+  }
+
+  public void put(int row, SampleChannel ch, Double v) {
+    if (v != null) put(row, ch, v.doubleValue());
+  }
+
+  public int size() { return size; }
+  public int capacity() { return capacity; }
+  public boolean isEmpty() { return size == 0; }
+  public boolean isFull() { return size == capacity; }
+
+  public UUID deviceId(int row) { return deviceIds[row]; }
+  public long tsMicros(int row) { return tsMicros[row]; }
+  public boolean has(int row, SampleChannel ch) { return (presence[row] & (1 << ch.ordinal())) != 0; }
+  public double value(int row, SampleChannel ch) { return values[ch.ordinal()][row]; }
+  public int presence(int row) { return presence[row]; }
+
+  public byte status(int row) { return status[row]; }
+  public void status(int row, byte s) { status[row] = s; }
+
+  public int count(byte s) {
+    int n = 0;
+    for (int i = 0; i < size; i++) if (status[i] == s) n++;
+    return n;
+  }
+
+  /** Copies one row (values and presence, not status) from another batch; returns the new index. */
+  public int copyRow(SampleBatch src, int srcRow) {
+    int row = append(src.deviceIds[srcRow], src.tsMicros[srcRow]);
+    for (int c = 0; c < values.length; c++) values[c][row] = src.values[c][srcRow];
+    presence[row] = src.presence[srcRow];
+    return row;
+  }
+
+  /** Resets the batch for reuse without reallocating the columns. */
+  public void clear() {
+    Arrays.fill(deviceIds, 0, size, null);
+    size = 0;
+  }
+
+  public static long toMicros(Instant ts) {
+    return Math.addExact(Math.multiplyExact(ts.getEpochSecond(), 1_000_000L), ts.getNano() / 1_000);
+  }
+
+  public static Instant toInstant(long micros) {
+    return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+  }
+}
@@ -0,0 +1,167 @@
+// repo/SampleBatchWriter.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.domain.SampleChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bulk write path for samples.
+ * Rows go out as multi-row INSERTs (one round trip per chunk) instead of one
+ * JPA save per row; {@code Sample} uses IDENTITY ids, so Hibernate can't batch them.
+ * Inserts are idempotent on (device_id, ts): rows that already exist come back as
+ * DUPLICATE via ON CONFLICT DO NOTHING ... RETURNING. If a chunk fails, its rows are
+ * retried one by one so a single bad row only rejects itself.
+ * Only PENDING rows are written; each ends up STORED, DUPLICATE or FAILED.
+ */
+@Repository
+public class SampleBatchWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(SampleBatchWriter.class);
+
+  /** Rows per INSERT; 500 rows x 9 params stays well under the 32767 bind limit. */
+  static final int ROWS_PER_STATEMENT = 500;
+
+  private static final String COLUMNS;
+  private static final String ROW_PLACEHOLDER;
+  static {
+    StringBuilder cols = new StringBuilder("device_id, ts");
+    StringBuilder row = new StringBuilder("(?, ?");
+    for (SampleChannel ch : SampleChannel.all()) {
+      cols.append(", ").append(ch.column());
+      row.append(", ?");
+    }
+    COLUMNS = cols.toString();
+    ROW_PLACEHOLDER = row.append(')').toString();
+  }
+
+  private static final String FULL_CHUNK_SQL = insertSql(ROWS_PER_STATEMENT, true);
+  private static final String SINGLE_ROW_SQL = insertSql(1, false);
+
+  private record Key(UUID deviceId, long tsMicros) {}
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate tx;
+
+  public SampleBatchWriter(JdbcTemplate jdbc, TransactionTemplate tx) {
+    this.jdbc = jdbc;
+    this.tx = tx;
+  }
+
+  /** Writes every PENDING row, chunk by chunk, falling back to single rows when a chunk fails. */
+  public void write(SampleBatch batch) {
+    int[] rows = pendingRows(batch);
+    for (int from = 0; from < rows.length; from += ROWS_PER_STATEMENT) {
+      int to = Math.min(rows.length, from + ROWS_PER_STATEMENT);
+      writeChunk(batch, rows, from, to);
+    }
+  }
+
+  /**
+   * Writes every PENDING row with multi-row INSERTs and no per-row fallback, so the
+   * caller can run it inside one transaction. Throws on the first failing chunk.
+   */
+  public void writeAll(SampleBatch batch) {
+    int[] rows = pendingRows(batch);
+    for (int from = 0; from < rows.length; from += ROWS_PER_STATEMENT) {
+      insertChunk(batch, rows, from, Math.min(rows.length, from + ROWS_PER_STATEMENT));
+    }
+  }
+
+  /**
+   * Commits the whole batch in one transaction. If anything in it fails, the
+   * transaction rolls back and the rows go through the per-row tolerant {@link #write}.
+   */
+  public void writeAtomically(SampleBatch batch) {
+    int[] rows = pendingRows(batch);
+    try {
+      tx.executeWithoutResult(s -> writeAll(batch));
+    } catch (DataAccessException e) {
+      log.warn("[INGEST] transaction of {} rows rolled back, retrying per row: {}",
+          rows.length, e.getMostSpecificCause().toString());
+      for (int row : rows) batch.status(row, SampleBatch.PENDING);
+      write(batch);
+    }
+  }
+
+  private void writeChunk(SampleBatch batch, int[] rows, int from, int to) {
+    try {
+      insertChunk(batch, rows, from, to);
+    } catch (DataAccessException e) {
+      log.warn("[INGEST] bulk insert of {} rows failed, retrying row by row: {}", to - from, e.getMostSpecificCause().toString());
+      for (int i = from; i < to; i++) writeSingle(batch, rows[i]);
+    }
+  }
+
+  private void insertChunk(SampleBatch batch, int[] rows, int from, int to) {
+    int n = to - from;
+    String sql = (n == ROWS_PER_STATEMENT) ? FULL_CHUNK_SQL : insertSql(n, true);
+    Set<Key> inserted = new HashSet<>(n * 2);
+    jdbc.query(sql, ps -> {
+      int idx = 1;
+      for (int i = from; i < to; i++) idx = bindRow(ps, idx, batch, rows[i]);
+    }, rs -> {
+      inserted.add(new Key(rs.getObject(1, UUID.class),
+          SampleBatch.toMicros(rs.getObject(2, OffsetDateTime.class).toInstant())));
+    });
+    for (int i = from; i < to; i++) {
+      int row = rows[i];
+      // remove() so a second copy of the same key in this chunk counts as a duplicate
+      boolean fresh = inserted.remove(new Key(batch.deviceId(row), batch.tsMicros(row)));
+      batch.status(row, fresh ? SampleBatch.STORED : SampleBatch.DUPLICATE);
+    }
+  }
+
+  private void writeSingle(SampleBatch batch, int row) {
+    try {
+      int n = jdbc.update(SINGLE_ROW_SQL, ps -> bindRow(ps, 1, batch, row));
+      batch.status(row, n == 1 ? SampleBatch.STORED : SampleBatch.DUPLICATE);
+    } catch (DataAccessException e) {
+      batch.status(row, SampleBatch.FAILED);
+    }
+  }
+
+  private static int[] pendingRows(SampleBatch batch) {
+    int[] rows = new int[batch.count(SampleBatch.PENDING)];
+    int n = 0;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) == SampleBatch.PENDING) rows[n++] = row;
+    }
+    return rows;
+  }
+
+  private static int bindRow(PreparedStatement ps, int idx, SampleBatch batch, int row) throws SQLException {
+    ps.setObject(idx++, batch.deviceId(row));
+    ps.setObject(idx++, OffsetDateTime.ofInstant(SampleBatch.toInstant(batch.tsMicros(row)), ZoneOffset.UTC));
+    for (SampleChannel ch : SampleChannel.all()) {
+      if (batch.has(row, ch)) ps.setDouble(idx++, batch.value(row, ch));
+      else ps.setNull(idx++, Types.DOUBLE);
+    }
+    return idx;
+  }
+
+  private static String insertSql(int rows, boolean returning) {
+    StringBuilder sb = new StringBuilder(96 + rows * (ROW_PLACEHOLDER.length() + 2))
+        .append("INSERT INTO samples (").append(COLUMNS).append(") VALUES ");
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) sb.append(", ");
+      sb.append(ROW_PLACEHOLDER);
+    }
+    sb.append(" ON CONFLICT (device_id, ts) DO NOTHING");
+    if (returning) sb.append(" RETURNING device_id, ts");
+    return sb.toString();
+  }
+}
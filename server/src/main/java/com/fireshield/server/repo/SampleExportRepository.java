@@ -0,0 +1,67 @@
+// repo/SampleExportRepository.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleSegmentRepository.RowSink;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset-chunked reads of raw samples for exports. Each chunk is one short query that
+ * seeks uq_samples_device_ts, so a long export never holds a connection or snapshot for
+ * longer than one chunk, and chunk N costs the same as chunk 1.
+ */
+@Repository
+public class SampleExportRepository {
+
+  private static final String COLUMNS = Arrays.stream(SampleChannel.all())
+      .map(SampleChannel::column).collect(Collectors.joining(", "));
+
+  private final JdbcTemplate jdbc;
+
+  public SampleExportRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Up to {@code limit} rows of one device with afterMicros &lt; ts &lt; beforeMicros, in ts
+   * order, handed to {@code sink} as they arrive (fetched {@code fetchSize} at a time when
+   * run inside a transaction). Returns the number of rows read.
+   */
+  public int chunk(UUID deviceId, long afterMicros, long beforeMicros, int limit, int fetchSize, RowSink sink) {
+    String sql = """
+        SELECT ts, %s
+        FROM samples
+        WHERE device_id = ? AND ts > ? AND ts < ?
+        ORDER BY ts
+        LIMIT ?
+        """.formatted(COLUMNS);
+    int channels = SampleChannel.count();
+    int[] rows = {0};
+    jdbc.query(con -> {
+      PreparedStatement ps = con.prepareStatement(sql);
+      ps.setFetchSize(fetchSize);
+      ps.setObject(1, deviceId);
+      ps.setTimestamp(2, Timestamp.from(SampleBatch.toInstant(afterMicros)));
+      ps.setTimestamp(3, Timestamp.from(SampleBatch.toInstant(beforeMicros)));
+      ps.setInt(4, limit);
+      return ps;
+    }, (RowCallbackHandler) rs -> {
+      double[] values = new double[channels];
+      for (int c = 0; c < channels; c++) {
+        double v = rs.getDouble(2 + c);
+        values[c] = rs.wasNull() ? Double.NaN : v;
+      }
+      sink.row(deviceId, SampleBatch.toMicros(rs.getTimestamp(1).toInstant()), values);
+      rows[0]++;
+    });
+    return rows[0];
+  }
+}
@@ -0,0 +1,81 @@
+// repo/SampleImportRepository.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.domain.SampleChannel;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk load path for historical samples. A file is streamed with COPY into an
+ * index-less temp table, then moved into samples with one sorted INSERT ... SELECT, so
+ * the unique and primary-key indexes are maintained once per file in key order instead
+ * of once per row as it arrives. Existing (device_id, ts) rows are skipped. Each file
+ * runs on its own connection in one transaction: it lands completely or not at all.
+ */
+@Repository
+public class SampleImportRepository {
+
+  private static final String COLUMNS = "device_id, ts, " + Arrays.stream(SampleChannel.all())
+      .map(SampleChannel::column).collect(Collectors.joining(", "));
+
+  private static final String CREATE_STAGING = "CREATE TEMP TABLE sample_import (device_id uuid NOT NULL, "
+      + "ts timestamptz NOT NULL, " + Arrays.stream(SampleChannel.all())
+      .map(c -> c.column() + " double precision").collect(Collectors.joining(", "))
+      + ") ON COMMIT DROP";
+
+  /** Rows copied into the staging table and rows of those that were new. */
+  public record Loaded(long staged, long inserted) {}
+
+  private final DataSource dataSource;
+
+  public SampleImportRepository(JdbcTemplate jdbc) {
+    this.dataSource = jdbc.getDataSource();
+  }
+
+  /**
+   * COPYs {@code rows} (COPY text format, columns device_id, ts, then every channel in
+   * SampleChannel order) into staging, runs {@code beforeMerge}, then merges into samples.
+   * The connection is not the thread's transactional one, so {@code rows} and
+   * {@code beforeMerge} may use other repositories meanwhile.
+   */
+  public Loaded load(Reader rows, Runnable beforeMerge) throws SQLException, IOException {
+    try (Connection con = dataSource.getConnection()) {
+      boolean autoCommit = con.getAutoCommit();
+      con.setAutoCommit(false);
+      try {
+        try (Statement st = con.createStatement()) {
+          st.execute(CREATE_STAGING);
+        }
+        long staged = con.unwrap(PGConnection.class).getCopyAPI()
+            .copyIn("COPY sample_import (" + COLUMNS + ") FROM STDIN", rows);
+        beforeMerge.run();
+        int inserted;
+        try (Statement st = con.createStatement()) {
+          inserted = st.executeUpdate("""
+              INSERT INTO samples (%1$s)
+              SELECT %1$s FROM sample_import
+              ORDER BY device_id, ts
+              ON CONFLICT (device_id, ts) DO NOTHING
+              """.formatted(COLUMNS));
+        }
+        con.commit();
+        return new Loaded(staged, inserted);
+      } catch (SQLException | IOException | RuntimeException e) {
+        con.rollback();
+        throw e;
+      } finally {
+        con.setAutoCommit(autoCommit);
+      }
+    }
+  }
+}
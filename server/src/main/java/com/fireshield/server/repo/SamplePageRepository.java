@@ -0,0 +1,84 @@
+// repo/SamplePageRepository.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.api.dto.RawSample;
+import com.fireshield.server.domain.SampleChannel;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset pages of one device's raw samples, read straight into RawSample rows (no
+ * managed entities). A page continues after the last (ts, id) of the previous one
+ * instead of skipping OFFSET rows, so it seeks uq_samples_device_ts to its start and
+ * reads only its own rows: page 1000 costs what page 1 does. (device_id, ts) is unique,
+ * so id only breaks ties the constraint already rules out and keeps the order total.
+ */
+@Repository
+public class SamplePageRepository {
+
+  private static final String COLUMNS = Arrays.stream(SampleChannel.all())
+      .map(SampleChannel::column).collect(Collectors.joining(", "));
+
+  private final JdbcTemplate jdbc;
+
+  public SamplePageRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Up to {@code limit} samples of the device with from &lt;= ts &lt; to, in (ts, id) order
+   * (newest first if {@code desc}), strictly after the key (afterTs, afterId) when afterTs
+   * is not null.
+   */
+  public List<RawSample> page(UUID deviceId, Instant from, Instant to, Instant afterTs, long afterId,
+                              boolean desc, int limit) {
+    Timestamp lo = Timestamp.from(from), hi = Timestamp.from(to);
+    if (afterTs == null) {
+      return jdbc.query("""
+          SELECT id, ts, %s
+          FROM samples
+          WHERE device_id = ? AND ts >= ? AND ts < ?
+          ORDER BY ts %2$s, id %2$s
+          LIMIT ?
+          """.formatted(COLUMNS, desc ? "DESC" : "ASC"), this::map, deviceId, lo, hi, limit);
+    }
+    // the plain ts bound lets the index seek and partition pruning start at the cursor;
+    // the row comparison then settles rows sharing its ts
+    Timestamp at = Timestamp.from(afterTs);
+    String sql = desc
+        ? """
+          SELECT id, ts, %s
+          FROM samples
+          WHERE device_id = ? AND ts >= ? AND ts < ? AND ts <= ? AND (ts, id) < (?, ?)
+          ORDER BY ts DESC, id DESC
+          LIMIT ?
+          """
+        : """
+          SELECT id, ts, %s
+          FROM samples
+          WHERE device_id = ? AND ts >= ? AND ts < ? AND ts >= ? AND (ts, id) > (?, ?)
+          ORDER BY ts, id
+          LIMIT ?
+          """;
+    return jdbc.query(sql.formatted(COLUMNS), this::map, deviceId, lo, hi, at, at, afterId, limit);
+  }
+
+  private RawSample map(ResultSet rs, int n) throws SQLException {
+    return new RawSample(rs.getLong(1), rs.getTimestamp(2).toInstant(),
+        get(rs, 3), get(rs, 4), get(rs, 5), get(rs, 6), get(rs, 7), get(rs, 8), get(rs, 9));
+  }
+
+  private static Double get(ResultSet rs, int col) throws SQLException {
+    double v = rs.getDouble(col);
+    return rs.wasNull() ? null : v;
+  }
+}
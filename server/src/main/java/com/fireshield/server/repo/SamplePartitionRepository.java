@@ -0,0 +1,88 @@
+// repo/SamplePartitionRepository.java
+package com.fireshield.server.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL and catalog lookups for the daily partitions of samples (see V6).
+ * Partitions are named samples_YYYYMMDD and cover one UTC day each.
+ */
+@Repository
+public class SamplePartitionRepository {
+
+  private static final Pattern NAME = Pattern.compile("samples_(\\d{8})");
+  private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+  private static final Pattern SCAN = Pattern.compile(" on samples_\\d{8}");
+  private static final Pattern REMOVED = Pattern.compile("Subplans Removed: (\\d+)");
+
+  /** A partition as listed in pg_inherits; detachPending if an earlier DETACH CONCURRENTLY was cut off. */
+  public record Partition(String name, LocalDate day, boolean detachPending) {}
+
+  /** How many partitions a query plan scans, out of how many it could have. */
+  public record PlanCheck(int scanned, int removed) {}
+
+  private final JdbcTemplate jdbc;
+
+  public SamplePartitionRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /** Creates the partition for the given UTC day if missing (idempotent). */
+  public void ensure(LocalDate day) {
+    jdbc.queryForObject("SELECT ensure_sample_partition(?)", String.class, day);
+  }
+
+  /** Daily partitions currently attached to samples, oldest first. */
+  public List<Partition> list() {
+    return jdbc.query("""
+        SELECT c.relname, i.inhdetachpending
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'samples'::regclass
+        ORDER BY c.relname
+        """, (rs, n) -> {
+          Matcher m = NAME.matcher(rs.getString(1));
+          LocalDate day = m.matches() ? LocalDate.parse(m.group(1), DAY) : null;
+          return new Partition(rs.getString(1), day, rs.getBoolean(2));
+        })
+        .stream().filter(p -> p.day() != null).toList();
+  }
+
+  /**
+   * Detaches and drops one partition. DETACH ... CONCURRENTLY only blocks writers to
+   * that partition, not to samples; it cannot run inside a transaction.
+   */
+  public void drop(Partition p) {
+    String name = "samples_" + p.day().format(DAY);   // rebuilt from the date, never raw catalog text
+    jdbc.execute("ALTER TABLE samples DETACH PARTITION " + name + (p.detachPending() ? " FINALIZE" : " CONCURRENTLY"));
+    jdbc.execute("DROP TABLE IF EXISTS " + name);
+  }
+
+  /**
+   * Drops one partition without detaching it first, so it can share the caller's
+   * transaction with other statements. Takes an ACCESS EXCLUSIVE lock on samples until
+   * that transaction ends; keep it short.
+   */
+  public void dropInTransaction(Partition p) {
+    jdbc.execute("DROP TABLE IF EXISTS samples_" + p.day().format(DAY));
+  }
+
+  /** EXPLAINs a query against samples and counts partition scans left in the plan vs pruned ones. */
+  public PlanCheck explain(String sql, Object... args) {
+    List<String> lines = jdbc.queryForList("EXPLAIN " + sql, String.class, args);
+    int scanned = 0, removed = 0;
+    for (String line : lines) {
+      if (SCAN.matcher(line).find()) scanned++;
+      Matcher m = REMOVED.matcher(line);
+      if (m.find()) removed += Integer.parseInt(m.group(1));
+    }
+    return new PlanCheck(scanned, removed);
+  }
+}
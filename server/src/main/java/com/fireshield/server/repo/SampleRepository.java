@@ -4,11 +4,12 @@ import com.fireshield.server.domain.Sample;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import java.util.List;
+import java.util.Collection;
+import java.util.UUID;
 
 public interface SampleRepository extends JpaRepository<Sample, Long> {
 
-    /** Simple averages used by /metrics and /insights */
+    /** Simple averages used by /metrics and /insights, over the given devices */
     @Query(
         value = """
         SELECT
@@ -16,14 +17,15 @@ public interface SampleRepository extends JpaRepository<Sample, Long> {
             AVG(formaldehyde_ppm) AS avg_ch2o,
             AVG(benzene_ppm)      AS avg_benzene
         FROM samples
-        WHERE ts >= CURRENT_TIMESTAMP - (:hours || ' hours')::interval
+        WHERE device_id IN (:ids)
+          AND ts >= CURRENT_TIMESTAMP - make_interval(hours => :hours)
         """,
         nativeQuery = true
     )
-    Object[] averagesLastHours(@Param("hours") int hours);
+    Object[] averagesLastHours(@Param("ids") Collection<UUID> deviceIds, @Param("hours") int hours);
 
     /**
-     * Rich stats for report (COALESCE avoids nulls; interval uses a robust cast).
+     * Rich stats for report, in one scan of the window over the given devices (COALESCE avoids nulls).
      * Row order:
      * [0] samples_count (bigint)
      * [1] window_start  (timestamptz)
@@ -36,6 +38,9 @@ public interface SampleRepository extends JpaRepository<Sample, Long> {
      * [8] avg_benzene
      * [9] cnt_elevated
      * [10] cnt_critical
+     * [11] slope_tvoc       (least squares, ppb per hour; null below two readings)
+     * [12] avg_first_half   (null if no readings)
+     * [13] avg_second_half  (null if no readings)
      */
     @Query(value = """
     WITH stats AS (
@@ -49,14 +54,18 @@ public interface SampleRepository extends JpaRepository<Sample, Long> {
             STDDEV_SAMP(tvoc_ppb)                                                    AS stddev_tvoc,
             AVG(formaldehyde_ppm)                                                    AS avg_ch2o,
             AVG(benzene_ppm)                                                         AS avg_benzene,
-            SUM(CASE WHEN tvoc_ppb >= :elev THEN 1 ELSE 0 END)                       AS cnt_elevated,
-            SUM(CASE WHEN tvoc_ppb >= :crit THEN 1 ELSE 0 END)                       AS cnt_critical
+            COUNT(*) FILTER (WHERE tvoc_ppb >= :elev)                                AS cnt_elevated,
+            COUNT(*) FILTER (WHERE tvoc_ppb >= :crit)                                AS cnt_critical,
+            REGR_SLOPE(tvoc_ppb, EXTRACT(EPOCH FROM ts) / 3600.0)                    AS slope_tvoc,
+            AVG(tvoc_ppb) FILTER (WHERE ts <  CURRENT_TIMESTAMP - make_interval(hours => :hours) / 2) AS avg_first_half,
+            AVG(tvoc_ppb) FILTER (WHERE ts >= CURRENT_TIMESTAMP - make_interval(hours => :hours) / 2) AS avg_second_half
         FROM samples
-        WHERE ts >= CURRENT_TIMESTAMP - (:hours || ' hours')::interval
+        WHERE device_id IN (:ids)
+          AND ts >= CURRENT_TIMESTAMP - make_interval(hours => :hours)
     )
     SELECT
         COALESCE(samples_count, 0)::bigint,
-        COALESCE(window_start, CURRENT_TIMESTAMP - (:hours || ' hours')::interval),
+        COALESCE(window_start, CURRENT_TIMESTAMP - make_interval(hours => :hours)),
         COALESCE(window_end, CURRENT_TIMESTAMP),
         COALESCE(avg_tvoc, 0),
         COALESCE(min_tvoc, 0),
@@ -65,61 +74,15 @@ public interface SampleRepository extends JpaRepository<Sample, Long> {
         COALESCE(avg_ch2o, 0),
         COALESCE(avg_benzene, 0),
         COALESCE(cnt_elevated, 0),
-        COALESCE(cnt_critical, 0)
+        COALESCE(cnt_critical, 0),
+        slope_tvoc,
+        avg_first_half,
+        avg_second_half
     FROM stats
     """, nativeQuery = true)
-    Object[] detailedStats(@Param("hours") int hours,
+    Object[] detailedStats(@Param("ids") Collection<UUID> deviceIds,
+                        @Param("hours") int hours,
                         @Param("elev") double tvocElev,
                         @Param("crit") double tvocCrit);
 
-    /** First/second half averages to estimate slope. */
-    @Query(value = """
-    WITH bounds AS (
-        SELECT
-        CURRENT_TIMESTAMP - (:hours || ' hours')::interval AS start_ts,
-        CURRENT_TIMESTAMP                                  AS end_ts
-    )
-    SELECT
-        (SELECT AVG(s.tvoc_ppb)
-        FROM samples s, bounds b
-        WHERE s.ts >= b.start_ts
-            AND s.ts <  b.start_ts + ((b.end_ts - b.start_ts)/2.0)) AS avg_first_half,
-        (SELECT AVG(s.tvoc_ppb)
-        FROM samples s, bounds b
-        WHERE s.ts >= b.start_ts + ((b.end_ts - b.start_ts)/2.0)
-            AND s.ts <= b.end_ts)                                    AS avg_second_half
-    """, nativeQuery = true)
-    Object[] tvocHalves(@Param("hours") int hours);
-
-    /** ✅ Time-series query for chart (used by /series endpoint) */
-    @Query(value = """
-      SELECT date_trunc(:bucket, ts) AS bucket_ts, AVG(tvoc_ppb) AS avg_tvoc
-      FROM samples
-      WHERE ts >= CURRENT_TIMESTAMP - (:hours || ' hours')::interval
-      GROUP BY 1
-      ORDER BY 1
-    """, nativeQuery = true)
-    List<Object[]> series(@Param("hours") int hours, @Param("bucket") String bucket);
-
-    @Query(value = """
-  WITH bounds AS (
-    SELECT date_trunc('day', CURRENT_TIMESTAMP) - (:days || ' days')::interval AS start_day,
-           date_trunc('day', CURRENT_TIMESTAMP)                                 AS end_day
-  )
-  SELECT g.day AS bucket_ts,
-         AVG(s.tvoc_ppb) AS avg_tvoc
-  FROM generate_series(
-         (SELECT start_day FROM bounds),
-         (SELECT end_day   FROM bounds),
-         interval '1 day'
-       ) AS g(day)
-  LEFT JOIN samples s
-    ON s.ts >= g.day
-   AND s.ts <  g.day + interval '1 day'
-  GROUP BY g.day
-  ORDER BY g.day
-""", nativeQuery = true)
-List<Object[]> seriesDays(@Param("days") int days);
-
 }
-
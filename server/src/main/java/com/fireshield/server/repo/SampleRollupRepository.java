@@ -0,0 +1,196 @@
+// repo/SampleRollupRepository.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.api.dto.TimePoint;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to sample_rollups (see V5, V8): per-device TVOC count/sum/min/max/sum of squares
+ * and a quantile sketch per minute, hour and day bucket (UTC-aligned).
+ */
+@Repository
+public class SampleRollupRepository {
+
+  /** One bucket's partial aggregate, as added by the ingest path; sketch is the jsonb DDSketch (see V8). */
+  public record Delta(String bucket, UUID deviceId, Instant bucketTs,
+                      long cnt, double sum, double min, double max, double sumsq, String sketch) {}
+
+  /** One bucket summed over devices, with each device's sketch still separate (merged by the caller). */
+  public record BucketSketch(Instant bucketTs, long cnt, double sum, String sketch) {}
+
+  /** Rows per round trip when streaming a series (see series with a sink). */
+  static final int STREAM_FETCH_SIZE = 1000;
+
+  private static final String UPSERT = """
+      INSERT INTO sample_rollups (bucket, device_id, bucket_ts, cnt, tvoc_sum, tvoc_min, tvoc_max, tvoc_sumsq, tvoc_sketch)
+      VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb)
+      ON CONFLICT (bucket, device_id, bucket_ts) DO UPDATE SET
+        cnt        = sample_rollups.cnt + EXCLUDED.cnt,
+        tvoc_sum   = sample_rollups.tvoc_sum + EXCLUDED.tvoc_sum,
+        tvoc_min   = LEAST(sample_rollups.tvoc_min, EXCLUDED.tvoc_min),
+        tvoc_max   = GREATEST(sample_rollups.tvoc_max, EXCLUDED.tvoc_max),
+        tvoc_sumsq = sample_rollups.tvoc_sumsq + EXCLUDED.tvoc_sumsq,
+        tvoc_sketch = dd_merge(sample_rollups.tvoc_sketch, EXCLUDED.tvoc_sketch)
+      """;
+
+  private final JdbcTemplate jdbc;
+
+  public SampleRollupRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Adds the deltas to their buckets. Callers pass them sorted by key so concurrent
+   * upserts lock rows in the same order. Additive, so late samples land correctly.
+   */
+  public void add(List<Delta> deltas) {
+    jdbc.batchUpdate(UPSERT, deltas, 500, (ps, d) -> {
+      ps.setString(1, d.bucket());
+      ps.setObject(2, d.deviceId());
+      ps.setObject(3, OffsetDateTime.ofInstant(d.bucketTs(), ZoneOffset.UTC));
+      ps.setLong(4, d.cnt());
+      ps.setDouble(5, d.sum());
+      ps.setDouble(6, d.min());
+      ps.setDouble(7, d.max());
+      ps.setDouble(8, d.sumsq());
+      ps.setString(9, d.sketch());
+    });
+  }
+
+  /**
+   * Recomputes every bucket overlapping [from, to) from raw samples (all devices when
+   * deviceId is null). Returns the number of rollup rows written.
+   */
+  public int rebuild(Instant from, Instant to, UUID deviceId) {
+    OffsetDateTime f = OffsetDateTime.ofInstant(from, ZoneOffset.UTC);
+    OffsetDateTime t = OffsetDateTime.ofInstant(to, ZoneOffset.UTC);
+    String deviceFilter = (deviceId == null) ? "" : " AND device_id = ?";
+    Object[] args = (deviceId == null) ? new Object[]{f, t} : new Object[]{f, t, deviceId};
+
+    // widened to whole UTC days so every minute/hour/day bucket touched is rebuilt completely
+    jdbc.update("""
+        DELETE FROM sample_rollups
+        WHERE bucket_ts >= date_trunc('day', ?::timestamptz, 'UTC')
+          AND bucket_ts <  date_trunc('day', ?::timestamptz, 'UTC') + interval '1 day'%s
+        """.formatted(deviceFilter), args);
+    // grouped per sketch bin first, then folded into one row (and one jsonb sketch) per bucket
+    return jdbc.update("""
+        INSERT INTO sample_rollups (bucket, device_id, bucket_ts, cnt, tvoc_sum, tvoc_min, tvoc_max, tvoc_sumsq, tvoc_sketch)
+        SELECT bucket, device_id, bucket_ts, SUM(n), SUM(s), MIN(mn), MAX(mx), SUM(sq), jsonb_object_agg(idx, n)
+        FROM (
+          SELECT b.bucket, device_id, date_trunc(b.bucket, ts, 'UTC') AS bucket_ts, dd_index(tvoc_ppb) AS idx,
+                 COUNT(*) AS n, SUM(tvoc_ppb) AS s, MIN(tvoc_ppb) AS mn, MAX(tvoc_ppb) AS mx,
+                 SUM(tvoc_ppb * tvoc_ppb) AS sq
+          FROM samples
+          CROSS JOIN (VALUES ('minute'), ('hour'), ('day')) AS b(bucket)
+          WHERE tvoc_ppb IS NOT NULL
+            AND ts >= date_trunc('day', ?::timestamptz, 'UTC')
+            AND ts <  date_trunc('day', ?::timestamptz, 'UTC') + interval '1 day'%s
+          GROUP BY 1, 2, 3, 4
+        ) bins
+        GROUP BY bucket, device_id, bucket_ts
+        """.formatted(deviceFilter), args);
+  }
+
+  /**
+   * Average TVOC per bucket over the given devices, for buckets starting within the last
+   * {@code hours} (bucket-aligned). Seeks the primary key per device.
+   */
+  public List<TimePoint> series(int hours, String bucket, Collection<UUID> deviceIds) {
+    List<TimePoint> out = new ArrayList<>();
+    series(hours, bucket, deviceIds, out::add);
+    return out;
+  }
+
+  /**
+   * Same rows as {@link #series(int, String, Collection)}, handed to {@code sink} in
+   * bucket order as they are read. Inside a transaction the driver fetches them in
+   * chunks of STREAM_FETCH_SIZE instead of materializing the whole result.
+   */
+  public void series(int hours, String bucket, Collection<UUID> deviceIds, Consumer<TimePoint> sink) {
+    List<Object> args = new ArrayList<>(List.of(bucket));
+    args.addAll(deviceIds);
+    args.add(bucket);
+    args.add(hours);
+    String sql = """
+        SELECT bucket_ts, SUM(tvoc_sum) / NULLIF(SUM(cnt), 0) AS avg_tvoc
+        FROM sample_rollups
+        WHERE bucket = ?
+          AND device_id IN (%s)
+          AND bucket_ts >= date_trunc(?, CURRENT_TIMESTAMP - make_interval(hours => ?), 'UTC')
+        GROUP BY bucket_ts
+        ORDER BY bucket_ts
+        """.formatted(placeholders(deviceIds.size()));
+    jdbc.query(con -> {
+      PreparedStatement ps = con.prepareStatement(sql);
+      ps.setFetchSize(STREAM_FETCH_SIZE);
+      for (int i = 0; i < args.size(); i++) ps.setObject(i + 1, args.get(i));
+      return ps;
+    }, (RowCallbackHandler) rs ->
+        sink.accept(new TimePoint(rs.getTimestamp(1).toInstant(), nullableDouble(rs.getObject(2)))));
+  }
+
+  /** One point per UTC day for the last {@code days} days over the given devices, null where nothing was recorded. */
+  public List<TimePoint> seriesDays(int days, Collection<UUID> deviceIds) {
+    List<Object> args = new ArrayList<>();
+    args.add(days);
+    args.addAll(deviceIds);
+    return jdbc.query("""
+        SELECT g.day, SUM(r.tvoc_sum) / NULLIF(SUM(r.cnt), 0) AS avg_tvoc
+        FROM generate_series(
+               date_trunc('day', CURRENT_TIMESTAMP, 'UTC') - make_interval(days => ?),
+               date_trunc('day', CURRENT_TIMESTAMP, 'UTC'),
+               interval '1 day') AS g(day)
+        LEFT JOIN sample_rollups r
+          ON r.bucket = 'day' AND r.bucket_ts = g.day AND r.device_id IN (%s)
+        GROUP BY g.day
+        ORDER BY g.day
+        """.formatted(placeholders(deviceIds.size())),
+        (rs, i) -> new TimePoint(rs.getTimestamp(1).toInstant(), nullableDouble(rs.getObject(2))),
+        args.toArray());
+  }
+
+  /**
+   * Per-device rows (count, sum, sketch) for the given devices and buckets starting within
+   * the last {@code hours} (bucket-aligned), ordered by bucket. Callers merge the sketches.
+   */
+  public List<BucketSketch> sketches(int hours, String bucket, Collection<UUID> deviceIds) {
+    List<Object> args = new ArrayList<>(List.of(bucket));
+    args.addAll(deviceIds);
+    args.add(bucket);
+    args.add(hours);
+    return jdbc.query("""
+        SELECT bucket_ts, cnt, tvoc_sum, tvoc_sketch::text
+        FROM sample_rollups
+        WHERE bucket = ?
+          AND device_id IN (%s)
+          AND bucket_ts >= date_trunc(?, CURRENT_TIMESTAMP - make_interval(hours => ?), 'UTC')
+        ORDER BY bucket_ts
+        """.formatted(placeholders(deviceIds.size())),
+        (rs, i) -> new BucketSketch(rs.getTimestamp(1).toInstant(), rs.getLong(2), rs.getDouble(3), rs.getString(4)),
+        args.toArray());
+  }
+
+  /** "?, ?, ?" for an IN list; "NULL" (matches nothing) when empty. */
+  static String placeholders(int n) {
+    return (n == 0) ? "NULL" : String.join(", ", Collections.nCopies(n, "?"));
+  }
+
+  private static Double nullableDouble(Object o) {
+    return (o == null) ? null : ((Number) o).doubleValue();
+  }
+}
@@ -0,0 +1,141 @@
+// repo/SampleSegmentRepository.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.domain.SampleChannel;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * The sample_segments catalog (see V9) and the partition reads that feed the archive.
+ */
+@Repository
+public class SampleSegmentRepository {
+
+  /** One archived device-day. */
+  public record Segment(LocalDate day, UUID deviceId, String path, int rows,
+                        Instant minTs, Instant maxTs, long bytes, String state) {}
+
+  /** Row sink for {@link #streamDay}: values in SampleChannel order, NaN where missing. */
+  @FunctionalInterface
+  public interface RowSink {
+    void row(UUID deviceId, long tsMicros, double[] values);
+  }
+
+  private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+  private static final String COLUMNS = Arrays.stream(SampleChannel.all())
+      .map(SampleChannel::column).collect(Collectors.joining(", "));
+
+  private final JdbcTemplate jdbc;
+
+  public SampleSegmentRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Every row of one day's partition, ordered by device then ts. Must run in a
+   * transaction for the fetch size to take effect (the driver then reads in chunks).
+   */
+  public void streamDay(LocalDate day, RowSink sink) {
+    String sql = "SELECT device_id, ts, " + COLUMNS + " FROM samples_" + day.format(DAY) + " ORDER BY device_id, ts";
+    int channels = SampleChannel.count();
+    jdbc.query(con -> {
+      PreparedStatement ps = con.prepareStatement(sql);
+      ps.setFetchSize(SampleRollupRepository.STREAM_FETCH_SIZE);
+      return ps;
+    }, (RowCallbackHandler) rs -> {
+      double[] values = new double[channels];
+      for (int c = 0; c < channels; c++) {
+        double v = rs.getDouble(3 + c);
+        values[c] = rs.wasNull() ? Double.NaN : v;
+      }
+      sink.row(rs.getObject(1, UUID.class), SampleBatch.toMicros(rs.getTimestamp(2).toInstant()), values);
+    });
+  }
+
+  public void insert(Segment s) {
+    jdbc.update("""
+        INSERT INTO sample_segments (day, device_id, path, row_count, min_ts, max_ts, bytes, state)
+        VALUES (?, ?, ?, ?, ?, ?, ?, 'WRITTEN')
+        ON CONFLICT (day, device_id) DO UPDATE SET
+          path = EXCLUDED.path, row_count = EXCLUDED.row_count, min_ts = EXCLUDED.min_ts,
+          max_ts = EXCLUDED.max_ts, bytes = EXCLUDED.bytes, state = 'WRITTEN', created_at = now()
+        """, s.day(), s.deviceId(), s.path(), s.rows(),
+        Timestamp.from(s.minTs()), Timestamp.from(s.maxTs()), s.bytes());
+  }
+
+  /** Marks a day's segments readable; called once its partition is gone. */
+  public int activate(LocalDate day) {
+    return jdbc.update("UPDATE sample_segments SET state = 'ACTIVE' WHERE day = ? AND state = 'WRITTEN'", day);
+  }
+
+  /** Days with segments not yet activated (an archive run was cut off). */
+  public List<LocalDate> writtenDays() {
+    return jdbc.queryForList(
+        "SELECT DISTINCT day FROM sample_segments WHERE state = 'WRITTEN' ORDER BY day", LocalDate.class);
+  }
+
+  /** Segments of one day, any state. */
+  public List<Segment> forDay(LocalDate day) {
+    return jdbc.query("SELECT * FROM sample_segments WHERE day = ?", (rs, i) -> map(rs), day);
+  }
+
+  public int deleteDay(LocalDate day) {
+    return jdbc.update("DELETE FROM sample_segments WHERE day = ?", day);
+  }
+
+  /** Readable segments of the given devices overlapping [from, to). */
+  public List<Segment> find(Collection<UUID> deviceIds, Instant from, Instant to) {
+    List<Object> args = new ArrayList<>(deviceIds);
+    args.add(Timestamp.from(from));
+    args.add(Timestamp.from(to));
+    return jdbc.query("""
+        SELECT * FROM sample_segments
+        WHERE state = 'ACTIVE'
+          AND device_id IN (%s)
+          AND max_ts >= ? AND min_ts < ?
+        ORDER BY day, device_id
+        """.formatted(SampleRollupRepository.placeholders(deviceIds.size())),
+        (rs, i) -> map(rs), args.toArray());
+  }
+
+  /** Latest day with readable segments, or null. Everything before the next day is cold. */
+  public LocalDate lastActiveDay() {
+    return jdbc.queryForObject("SELECT max(day) FROM sample_segments WHERE state = 'ACTIVE'", LocalDate.class);
+  }
+
+  /** Days older than {@code before} that have readable segments, oldest first. */
+  public List<LocalDate> activeDaysBefore(LocalDate before) {
+    return jdbc.queryForList(
+        "SELECT DISTINCT day FROM sample_segments WHERE state = 'ACTIVE' AND day < ? ORDER BY day",
+        LocalDate.class, before);
+  }
+
+  /** {segments, rows, bytes} over readable segments. */
+  public long[] totals() {
+    return jdbc.queryForObject(
+        "SELECT count(*), COALESCE(sum(row_count), 0), COALESCE(sum(bytes), 0) FROM sample_segments WHERE state = 'ACTIVE'",
+        (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+  }
+
+  private static Segment map(ResultSet rs) throws SQLException {
+    return new Segment(rs.getObject("day", LocalDate.class), rs.getObject("device_id", UUID.class),
+        rs.getString("path"), rs.getInt("row_count"),
+        rs.getTimestamp("min_ts").toInstant(), rs.getTimestamp("max_ts").toInstant(),
+        rs.getLong("bytes"), rs.getString("state"));
+  }
+}
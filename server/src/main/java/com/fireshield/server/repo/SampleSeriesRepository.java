@@ -0,0 +1,173 @@
+// repo/SampleSeriesRepository.java
+package com.fireshield.server.repo;
+
+import com.fireshield.server.api.dto.SeriesBucket;
+import com.fireshield.server.api.dto.SeriesBucket.ChannelStats;
+import com.fireshield.server.domain.SampleChannel;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregations over samples whose SQL is generated per channel:
+ * - multi-channel series for bucket widths the rollups don't keep, in one pass over the
+ *   window (date_bin on the epoch origin), gap-filled against generate_series;
+ * - window moments, the raw state of RunningStats, so a window split between Postgres
+ *   and the archive can be merged exactly (see MetricsService).
+ */
+@Repository
+public class SampleSeriesRepository {
+
+  /**
+   * Centered sums for one channel over a window, x being hours since the window origin:
+   * n and means from REGR_COUNT/REGR_AVGY/REGR_AVGX, syy/sxx/sxy from REGR_SYY/SXX/SXY,
+   * counts at or above each threshold, and count/sum before and after the split.
+   */
+  public record ChannelMoments(long n, double meanY, double syy, double min, double max,
+                               double meanX, double sxx, double sxy, long[] atLeast,
+                               long firstN, double firstSum, long secondN, double secondSum) {}
+
+  /** Row count, time range and per-channel moments for [origin, now). */
+  public record WindowMoments(long rows, Instant minTs, Instant maxTs, Map<SampleChannel, ChannelMoments> channels) {}
+
+  private final JdbcTemplate jdbc;
+
+  public SampleSeriesRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Buckets of {@code width} covering [from, to), {@code from} aligned to width since the
+   * epoch, with count and avg/min/max of each channel over the given devices.
+   */
+  public List<SeriesBucket> buckets(Instant from, Instant to, Duration width,
+                                    List<SampleChannel> channels, Collection<UUID> deviceIds) {
+    String aggregates = channels.stream()
+        .map(c -> "COUNT(%1$s), AVG(%1$s), MIN(%1$s), MAX(%1$s)".formatted(c.column()))
+        .collect(Collectors.joining(",\n               "));
+    String picked = channels.stream()
+        .map(c -> "COALESCE(a.n_%1$s, 0), a.avg_%1$s, a.min_%1$s, a.max_%1$s".formatted(c.column()))
+        .collect(Collectors.joining(", "));
+    String aliases = channels.stream()
+        .map(c -> "n_%1$s, avg_%1$s, min_%1$s, max_%1$s".formatted(c.column()))
+        .collect(Collectors.joining(", "));
+
+    long secs = width.toSeconds();
+    List<Object> args = new ArrayList<>();
+    args.add(secs);
+    args.addAll(deviceIds);
+    args.add(Timestamp.from(from));
+    args.add(Timestamp.from(to));
+    args.add(Timestamp.from(from));
+    args.add(Timestamp.from(lastBucket(to, width)));
+    args.add(secs);
+
+    String sql = """
+        WITH agg (b, cnt, %s) AS (
+          SELECT date_bin(make_interval(secs => ?), ts, TIMESTAMPTZ 'epoch'),
+                 COUNT(*),
+                 %s
+          FROM samples
+          WHERE device_id IN (%s)
+            AND ts >= ? AND ts < ?
+          GROUP BY 1
+        )
+        SELECT g.b, COALESCE(a.cnt, 0), %s
+        FROM generate_series(?::timestamptz, ?::timestamptz, make_interval(secs => ?)) AS g(b)
+        LEFT JOIN agg a ON a.b = g.b
+        ORDER BY g.b
+        """.formatted(aliases, aggregates, SampleRollupRepository.placeholders(deviceIds.size()), picked);
+
+    return jdbc.query(sql, (rs, i) -> row(rs, channels), args.toArray());
+  }
+
+  /**
+   * Moments of each channel over the given devices for ts in [origin, now), with the
+   * thresholds to count per channel (in map order). One scan of the window.
+   */
+  public WindowMoments moments(Collection<UUID> deviceIds, Instant origin, double splitHours,
+                               Map<SampleChannel, double[]> channels) {
+    StringBuilder cols = new StringBuilder();
+    for (Map.Entry<SampleChannel, double[]> e : channels.entrySet()) {
+      String y = e.getKey().column();
+      cols.append(",\n          REGR_COUNT(%1$s, x), REGR_AVGY(%1$s, x), REGR_SYY(%1$s, x), MIN(%1$s), MAX(%1$s),"
+          .formatted(y));
+      cols.append(" REGR_AVGX(%1$s, x), REGR_SXX(%1$s, x), REGR_SXY(%1$s, x)".formatted(y));
+      for (double t : e.getValue()) cols.append(", COUNT(*) FILTER (WHERE %s >= %s)".formatted(y, Double.toString(t)));
+      cols.append(", COUNT(%1$s) FILTER (WHERE x < ?), SUM(%1$s) FILTER (WHERE x < ?)".formatted(y));
+      cols.append(", COUNT(%1$s) FILTER (WHERE x >= ?), SUM(%1$s) FILTER (WHERE x >= ?)".formatted(y));
+    }
+
+    Timestamp originTs = Timestamp.from(origin);
+    List<Object> args = new ArrayList<>();
+    for (int i = 0; i < channels.size() * 4; i++) args.add(splitHours);
+    args.add(originTs);
+    args.addAll(deviceIds);
+    args.add(originTs);
+
+    String sql = """
+        SELECT COUNT(*), MIN(ts), MAX(ts)%s
+        FROM (
+          SELECT s.*, EXTRACT(EPOCH FROM s.ts - ?::timestamptz) / 3600.0 AS x
+          FROM samples s
+          WHERE s.device_id IN (%s)
+            AND s.ts >= ?
+        ) w
+        """.formatted(cols, SampleRollupRepository.placeholders(deviceIds.size()));
+
+    return jdbc.queryForObject(sql, (rs, i) -> {
+      Map<SampleChannel, ChannelMoments> out = new LinkedHashMap<>();
+      int col = 4;
+      for (Map.Entry<SampleChannel, double[]> e : channels.entrySet()) {
+        long n = rs.getLong(col);
+        double meanY = rs.getDouble(col + 1), syy = rs.getDouble(col + 2);
+        double min = rs.getDouble(col + 3), max = rs.getDouble(col + 4);
+        double meanX = rs.getDouble(col + 5), sxx = rs.getDouble(col + 6), sxy = rs.getDouble(col + 7);
+        col += 8;
+        long[] atLeast = new long[e.getValue().length];
+        for (int t = 0; t < atLeast.length; t++) atLeast[t] = rs.getLong(col++);
+        long firstN = rs.getLong(col), secondN = rs.getLong(col + 2);
+        double firstSum = rs.getDouble(col + 1), secondSum = rs.getDouble(col + 3);
+        col += 4;
+        out.put(e.getKey(), new ChannelMoments(n, meanY, syy, min, max, meanX, sxx, sxy, atLeast,
+            firstN, firstSum, secondN, secondSum));
+      }
+      Timestamp min = rs.getTimestamp(2), max = rs.getTimestamp(3);
+      return new WindowMoments(rs.getLong(1), min == null ? null : min.toInstant(),
+          max == null ? null : max.toInstant(), out);
+    }, args.toArray());
+  }
+
+  /** Start of the bucket holding the last instant before {@code to}. */
+  static Instant lastBucket(Instant to, Duration width) {
+    long w = width.toMillis();
+    return Instant.ofEpochMilli(Math.floorDiv(to.toEpochMilli() - 1, w) * w);
+  }
+
+  private static SeriesBucket row(ResultSet rs, List<SampleChannel> channels) throws SQLException {
+    Map<String, ChannelStats> stats = new LinkedHashMap<>();
+    int col = 3;
+    for (SampleChannel c : channels) {
+      stats.put(c.column(), new ChannelStats(rs.getLong(col),
+          nullableDouble(rs.getObject(col + 1)), nullableDouble(rs.getObject(col + 2)), nullableDouble(rs.getObject(col + 3))));
+      col += 4;
+    }
+    return new SeriesBucket(rs.getTimestamp(1).toInstant(), rs.getLong(2), stats);
+  }
+
+  private static Double nullableDouble(Object o) {
+    return (o == null) ? null : ((Number) o).doubleValue();
+  }
+}
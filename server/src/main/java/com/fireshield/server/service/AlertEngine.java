@@ -0,0 +1,242 @@
+// service/AlertEngine.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.Alert;
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.AlertRepository;
+import com.fireshield.server.repo.DeviceRepository;
+import com.fireshield.server.repo.SampleBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming TVOC threshold evaluator on the ingest path.
+ * Keeps a small state machine per device in memory (SAFE / ELEVATED / CRITICAL) and
+ * writes an {@link Alert} only when the level changes. A level is entered at the
+ * MetricsService thresholds and left only below threshold - hysteresis, and a new level
+ * must hold for {@code debounce-samples} consecutive samples before it is committed.
+ * Samples older than the newest one already seen for a device are ignored, and so are
+ * samples older than {@code max-age-seconds}: backfills and bulk uploads replay history,
+ * which must not raise "live" alerts stamped in the past.
+ * Each committed {@link Transition} is also published as an application event. If the
+ * alert rows can't be written, the in-memory level is put back so the change is raised
+ * again by the next qualifying samples instead of being lost.
+ */
+@Service
+@Order(IngestListener.ORDER_NOTIFY)
+public class AlertEngine implements IngestListener {
+
+  private static final Logger log = LoggerFactory.getLogger(AlertEngine.class);
+
+  public enum Level {
+    SAFE("INFO"), ELEVATED("WARN"), CRITICAL("CRITICAL");
+
+    private final String alertLevel;   // alerts.level values: INFO/WARN/CRITICAL
+    Level(String alertLevel) { this.alertLevel = alertLevel; }
+    public String alertLevel() { return alertLevel; }
+
+    static Level fromAlertLevel(String s) {
+      for (Level l : values()) if (l.alertLevel.equalsIgnoreCase(s)) return l;
+      return SAFE;
+    }
+  }
+
+  /** A committed level change, as written to the alerts table. */
+  public record Transition(UUID deviceId, Level from, Level to, double tvocPpb, Instant ts, String message) {}
+
+  private static final class DeviceState {
+    Level level;
+    Level candidate;
+    int candidateCount;
+    long lastTsMicros = Long.MIN_VALUE;
+    DeviceState(Level level) { this.level = level; }
+  }
+
+  private final AlertRepository alerts;
+  private final DeviceRepository devices;
+  private final TransactionTemplate tx;
+  private final ApplicationEventPublisher events;
+  private final boolean enabled;
+  private final double hysteresis;
+  private final int debounce;
+  private final long maxAgeMicros;
+  private final Map<UUID, DeviceState> states = new ConcurrentHashMap<>();
+
+  public AlertEngine(
+      AlertRepository alerts,
+      DeviceRepository devices,
+      TransactionTemplate tx,
+      ApplicationEventPublisher events,
+      @Value("${app.alerts.enabled:true}") boolean enabled,
+      @Value("${app.alerts.hysteresis-ppb:50}") double hysteresis,
+      @Value("${app.alerts.debounce-samples:3}") int debounce,
+      @Value("${app.alerts.max-age-seconds:300}") long maxAgeSeconds
+  ) {
+    this.alerts = alerts;
+    this.devices = devices;
+    this.tx = tx;
+    this.events = events;
+    this.enabled = enabled;
+    this.hysteresis = hysteresis;
+    this.debounce = Math.max(1, debounce);
+    this.maxAgeMicros = Math.max(1, maxAgeSeconds) * 1_000_000L;
+  }
+
+  @Override
+  public void onStored(SampleBatch batch) {
+    if (!enabled) return;
+    List<Transition> changes = null;
+    UUID lastDevice = null;
+    DeviceState state = null;
+    long oldest = SampleBatch.toMicros(Instant.now()) - maxAgeMicros;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != SampleBatch.STORED || !batch.has(row, SampleChannel.TVOC)) continue;
+      if (batch.tsMicros(row) < oldest) continue;   // historical, not live
+      UUID device = batch.deviceId(row);
+      if (!device.equals(lastDevice)) {
+        lastDevice = device;
+        state = states.get(device);
+        if (state == null) {
+          // load outside the map so the first batch of a device doesn't block others
+          DeviceState loaded = initialState(device);
+          DeviceState raced = states.putIfAbsent(device, loaded);
+          state = (raced != null) ? raced : loaded;
+        }
+      }
+      Transition t;
+      synchronized (state) {
+        t = observe(device, state, batch.tsMicros(row), batch.value(row, SampleChannel.TVOC));
+      }
+      if (t != null) {
+        if (changes == null) changes = new ArrayList<>();
+        changes.add(t);
+      }
+    }
+    if (changes != null) persist(changes);
+  }
+
+  /** Current committed level for a device (SAFE if never seen). */
+  public Level levelOf(UUID deviceId) {
+    DeviceState s = states.get(deviceId);
+    return (s == null) ? Level.SAFE : s.level;
+  }
+
+  private Transition observe(UUID device, DeviceState s, long tsMicros, double tvoc) {
+    if (tsMicros <= s.lastTsMicros) return null;   // late or replayed sample
+    s.lastTsMicros = tsMicros;
+
+    Level target = classify(tvoc, s.level);
+    if (target == s.level) {
+      s.candidate = null;
+      s.candidateCount = 0;
+      return null;
+    }
+    if (target != s.candidate) {
+      s.candidate = target;
+      s.candidateCount = 0;
+    }
+    if (++s.candidateCount < debounce) return null;
+
+    Level from = s.level;
+    s.level = target;
+    s.candidate = null;
+    s.candidateCount = 0;
+    return new Transition(device, from, target, tvoc, SampleBatch.toInstant(tsMicros), message(from, target, tvoc));
+  }
+
+  /** Level for a reading given the current level; leaving a level needs to clear the hysteresis band. */
+  Level classify(double tvoc, Level current) {
+    double crit = (current == Level.CRITICAL) ? MetricsService.TVOC_CRITICAL - hysteresis : MetricsService.TVOC_CRITICAL;
+    double elev = (current != Level.SAFE) ? MetricsService.TVOC_ELEVATED - hysteresis : MetricsService.TVOC_ELEVATED;
+    if (tvoc >= crit) return Level.CRITICAL;
+    if (tvoc >= elev) return Level.ELEVATED;
+    return Level.SAFE;
+  }
+
+  private static String message(Level from, Level to, double tvoc) {
+    String reading = String.format("TVOC %.0f ppb", tvoc);
+    return switch (to) {
+      case CRITICAL -> reading + " reached CRITICAL (>= " + (int) MetricsService.TVOC_CRITICAL + " ppb)";
+      case ELEVATED -> (from == Level.CRITICAL)
+          ? reading + " dropped from CRITICAL to ELEVATED"
+          : reading + " reached ELEVATED (>= " + (int) MetricsService.TVOC_ELEVATED + " ppb)";
+      case SAFE -> reading + " back to SAFE after " + from;
+    };
+  }
+
+  /** Resumes from the last written alert so a restart doesn't re-announce the current level. */
+  private DeviceState initialState(UUID deviceId) {
+    try {
+      return new DeviceState(alerts.findFirstByDeviceIdOrderByTsDesc(deviceId)
+          .map(a -> Level.fromAlertLevel(a.getLevel()))
+          .orElse(Level.SAFE));
+    } catch (Exception e) {
+      log.warn("[ALERTS] could not load last alert for {}: {}", deviceId, e.toString());
+      return new DeviceState(Level.SAFE);
+    }
+  }
+
+  private void persist(List<Transition> changes) {
+    try {
+      write(changes);
+    } catch (RuntimeException e) {
+      rollback(changes);
+      throw e;
+    }
+    for (Transition t : changes) {
+      log.info("[ALERTS] device {}: {} -> {} ({})", t.deviceId(), t.from(), t.to(), t.message());
+      events.publishEvent(t);   // picked up by LiveStreamService
+    }
+  }
+
+  private void write(List<Transition> changes) {
+    tx.executeWithoutResult(s -> {
+      for (Transition t : changes) {
+        Alert a = new Alert();
+        a.setDevice(devices.getReferenceById(t.deviceId()));
+        a.setLevel(t.to().alertLevel());
+        a.setMessage(t.message());
+        a.setTs(t.ts());
+        alerts.save(a);
+      }
+    });
+  }
+
+  /**
+   * Undoes the level changes of a batch whose alerts were not written: each device goes
+   * back to the level before its first transition, unless another batch has moved it since.
+   */
+  private void rollback(List<Transition> changes) {
+    Map<UUID, Transition> first = new LinkedHashMap<>();
+    Map<UUID, Transition> last = new HashMap<>();
+    for (Transition t : changes) {
+      first.putIfAbsent(t.deviceId(), t);
+      last.put(t.deviceId(), t);
+    }
+    for (Transition t : first.values()) {
+      DeviceState s = states.get(t.deviceId());
+      if (s == null) continue;
+      synchronized (s) {
+        if (s.level != last.get(t.deviceId()).to()) continue;
+        s.level = t.from();
+        s.candidate = null;
+        s.candidateCount = 0;
+      }
+      log.warn("[ALERTS] device {}: could not write alert, level back to {}", t.deviceId(), t.from());
+    }
+  }
+}
@@ -0,0 +1,60 @@
+// service/BoundedCache.java
+package com.fireshield.server.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * Small size-bounded LRU map with a per-entry expiry.
+ * Synchronized; meant for hot lookups where a plain map would grow without bound.
+ */
+public class BoundedCache<K, V> {
+
+  private record Entry<V>(V value, long expiresAtMs) {}
+
+  private final int maxSize;
+  private final LinkedHashMap<K, Entry<V>> map;
+
+  public BoundedCache(int maxSize) {
+    this.maxSize = Math.max(1, maxSize);
+    this.map = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        return size() > BoundedCache.this.maxSize;
+      }
+    };
+  }
+
+  /** Returns the live value, or null if absent or expired. */
+  public synchronized V get(K key) {
+    Entry<V> e = map.get(key);
+    if (e == null) return null;
+    if (e.expiresAtMs() <= System.currentTimeMillis()) {
+      map.remove(key);
+      return null;
+    }
+    return e.value();
+  }
+
+  public synchronized void put(K key, V value, long ttlMs) {
+    map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMs));
+  }
+
+  public synchronized void remove(K key) {
+    map.remove(key);
+  }
+
+  /** Drops every entry matching the predicate (key, value). */
+  public synchronized void removeIf(BiPredicate<K, V> predicate) {
+    map.entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue().value()));
+  }
+
+  public synchronized void clear() {
+    map.clear();
+  }
+
+  public synchronized int size() {
+    return map.size();
+  }
+}
@@ -0,0 +1,71 @@
+// service/CircuitBreaker.java
+package com.fireshield.server.service;
+
+/**
+ * Consecutive-failure circuit breaker for one upstream (a model).
+ * CLOSED lets calls through; {@code failureThreshold} failures in a row open it, and
+ * while OPEN calls are refused so callers go straight to their fallback. After
+ * {@code openMs} a single trial call is let through (HALF_OPEN): success closes the
+ * breaker, failure opens it again.
+ */
+public class CircuitBreaker {
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final int failureThreshold;
+  private final long openMs;
+
+  private State state = State.CLOSED;
+  private int failures;
+  private long openUntilMs;
+  private boolean trialInFlight;
+
+  public CircuitBreaker(int failureThreshold, long openMs) {
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openMs = openMs;
+  }
+
+  /** True if a call may go out now. In HALF_OPEN only the first caller gets through. */
+  public synchronized boolean allow() {
+    if (state == State.OPEN && System.currentTimeMillis() >= openUntilMs) {
+      state = State.HALF_OPEN;
+      trialInFlight = false;
+    }
+    return switch (state) {
+      case CLOSED -> true;
+      case OPEN -> false;
+      case HALF_OPEN -> {
+        if (trialInFlight) yield false;
+        trialInFlight = true;
+        yield true;
+      }
+    };
+  }
+
+  public synchronized void onSuccess() {
+    state = State.CLOSED;
+    failures = 0;
+    trialInFlight = false;
+  }
+
+  /** Returns true if this failure opened the breaker. */
+  public synchronized boolean onFailure() {
+    failures++;
+    trialInFlight = false;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+      state = State.OPEN;
+      openUntilMs = System.currentTimeMillis() + openMs;
+      return true;
+    }
+    return false;
+  }
+
+  /** Gives back a HALF_OPEN trial whose call was abandoned before it told us anything. */
+  public synchronized void release() {
+    trialInFlight = false;
+  }
+
+  public synchronized State state() {
+    return state;
+  }
+}
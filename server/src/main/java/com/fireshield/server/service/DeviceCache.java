@@ -0,0 +1,57 @@
+// service/DeviceCache.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.Device;
+import com.fireshield.server.repo.DeviceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Device-key credential cache for the ingest path.
+ * Known keys are kept for a TTL, unknown keys are cached negatively for a shorter TTL
+ * so a misconfigured sensor can't hammer the devices table. Entries are dropped
+ * explicitly when a device is created, changed or deleted (see config.DeviceCacheInvalidation).
+ */
+@Service
+public class DeviceCache {
+
+  private final DeviceRepository devices;
+  private final BoundedCache<String, Optional<Device>> byKey;
+  private final long ttlMs;
+  private final long negativeTtlMs;
+
+  public DeviceCache(
+      DeviceRepository devices,
+      @Value("${app.ingest.device-cache.max-size:10000}") int maxSize,
+      @Value("${app.ingest.device-cache.ttl-seconds:300}") long ttlSeconds,
+      @Value("${app.ingest.device-cache.negative-ttl-seconds:30}") long negativeTtlSeconds
+  ) {
+    this.devices = devices;
+    this.byKey = new BoundedCache<>(maxSize);
+    this.ttlMs = ttlSeconds * 1000;
+    this.negativeTtlMs = negativeTtlSeconds * 1000;
+  }
+
+  /** Resolves a device key, hitting the database at most once per TTL. */
+  public Optional<Device> findByKey(String key) {
+    Optional<Device> cached = byKey.get(key);
+    if (cached != null) return cached;
+    Optional<Device> loaded = devices.findByDeviceKey(key);
+    byKey.put(key, loaded, loaded.isPresent() ? ttlMs : negativeTtlMs);
+    return loaded;
+  }
+
+  /** Forgets the device under its current key and any stale key still pointing at it. */
+  public void invalidate(Device device) {
+    if (device.getDeviceKey() != null) byKey.remove(device.getDeviceKey());
+    if (device.getId() != null) {
+      byKey.removeIf((k, v) -> v.isPresent() && device.getId().equals(v.get().getId()));
+    }
+  }
+
+  public void invalidateAll() {
+    byKey.clear();
+  }
+}
@@ -0,0 +1,22 @@
+// service/DeviceScope.java
+package com.fireshield.server.service;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The devices a read request may see: the caller's own devices, or the single one it
+ * asked for. Every metrics/series/insights query filters on {@code deviceIds}, so its
+ * cost follows the caller's data rather than the fleet. Ids are sorted, so two scopes
+ * over the same devices compare equal.
+ */
+public record DeviceScope(UUID ownerId, List<UUID> deviceIds) {
+
+  public DeviceScope {
+    deviceIds = deviceIds.stream().sorted().toList();
+  }
+
+  public boolean isEmpty() {
+    return deviceIds.isEmpty();
+  }
+}
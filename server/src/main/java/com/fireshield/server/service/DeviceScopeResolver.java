@@ -0,0 +1,40 @@
+// service/DeviceScopeResolver.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.DeviceRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.UUID;
+
+/** Builds the {@link DeviceScope} for a request from the JWT subject (the user id). */
+@Service
+public class DeviceScopeResolver {
+  private final DeviceRepository devices;
+
+  public DeviceScopeResolver(DeviceRepository devices) {
+    this.devices = devices;
+  }
+
+  /**
+   * All devices owned by the caller, or just {@code deviceId} if given.
+   * 403 if the caller does not own {@code deviceId}.
+   */
+  public DeviceScope resolve(Authentication auth, UUID deviceId) {
+    UUID ownerId;
+    try {
+      ownerId = UUID.fromString(auth.getName());
+    } catch (IllegalArgumentException | NullPointerException e) {
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Token subject is not a user id");
+    }
+    List<UUID> owned = devices.findIdsByOwnerId(ownerId);
+    if (deviceId != null) {
+      if (!owned.contains(deviceId)) throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your device");
+      owned = List.of(deviceId);
+    }
+    return new DeviceScope(ownerId, owned);
+  }
+}
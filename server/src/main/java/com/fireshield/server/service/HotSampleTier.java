@@ -0,0 +1,316 @@
+// service/HotSampleTier.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Optional in-memory copy of the last {@code app.hot-tier.hours} of samples per device,
+ * so the 24 h /metrics and /insights windows don't hit Postgres.
+ * Each device has a ring of primitive columns (ts in epoch micros, one double[] per
+ * channel, NaN = missing), kept sorted by ts so window scans stop early and replays
+ * of the same (device, ts) are ignored. Fed by the ingest path, warmed from the
+ * database at startup; {@link #covers} is false until warm-up has finished.
+ */
+@Service
+@Order(IngestListener.ORDER_DATA)
+public class HotSampleTier implements IngestListener {
+
+  private static final Logger log = LoggerFactory.getLogger(HotSampleTier.class);
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int CHANNELS = SampleChannel.count();
+  /** Bytes per retained sample: ts + one double per channel. */
+  static final int BYTES_PER_SAMPLE = 8 + 8 * CHANNELS;
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate tx;
+  private final boolean enabled;
+  private final int hours;
+  private final long spanMicros;
+  private final int maxPerDevice;
+
+  private final Map<UUID, Ring> rings = new ConcurrentHashMap<>();
+  private volatile boolean ready;
+
+  public HotSampleTier(
+      JdbcTemplate jdbc,
+      TransactionTemplate tx,
+      MeterRegistry meters,
+      @Value("${app.hot-tier.enabled:false}") boolean enabled,
+      @Value("${app.hot-tier.hours:24}") int hours,
+      @Value("${app.hot-tier.max-samples-per-device:100000}") int maxPerDevice
+  ) {
+    this.jdbc = jdbc;
+    this.tx = tx;
+    this.enabled = enabled;
+    this.hours = Math.max(1, hours);
+    this.spanMicros = this.hours * 3_600_000_000L;
+    this.maxPerDevice = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, maxPerDevice) - 1) << 1;   // power of two
+    if (enabled) {
+      meters.gauge("fireshield.hottier.devices", rings, Map::size);
+      meters.gauge("fireshield.hottier.samples", this, t -> t.totals()[0]);
+      meters.gauge("fireshield.hottier.bytes", this, t -> t.totals()[1]);
+    }
+  }
+
+  /**
+   * True if a window of the given length over these devices can be answered from memory:
+   * the tier is warm, the window fits, and no device has overwritten samples inside it
+   * (a device writing more than max-samples-per-device in the window has lost its oldest).
+   */
+  public boolean covers(int windowHours, Collection<UUID> deviceIds) {
+    if (!enabled || !ready || windowHours > hours) return false;
+    long from = SampleBatch.toMicros(Instant.now()) - windowHours * 3_600_000_000L;
+    for (UUID id : deviceIds) {
+      Ring r = rings.get(id);
+      if (r != null && !r.completeSince(from)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Aggregates every sample of the last {@code windowHours} for the given devices. Each
+   * ring is scanned into its own accumulator, in parallel, and the partials are merged.
+   */
+  WindowAccumulator scan(int windowHours, Collection<UUID> deviceIds, Supplier<WindowAccumulator> fresh) {
+    long from = SampleBatch.toMicros(Instant.now()) - windowHours * 3_600_000_000L;
+    return deviceIds.parallelStream()
+        .map(rings::get)
+        .filter(Objects::nonNull)
+        .map(r -> r.scan(from, fresh.get()))
+        .reduce(WindowAccumulator::merge)
+        .orElseGet(fresh);
+  }
+
+  /** Oldest ts (micros) the tier currently holds samples for; MAX_VALUE when disabled. */
+  public long horizonMicros() {
+    return enabled ? SampleBatch.toMicros(Instant.now()) - spanMicros : Long.MAX_VALUE;
+  }
+
+  @Override
+  public void onStored(SampleBatch batch) {
+    if (!enabled) return;
+    long horizon = SampleBatch.toMicros(Instant.now()) - spanMicros;
+    double[] row = new double[CHANNELS];
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.status(i) != SampleBatch.STORED || batch.tsMicros(i) < horizon) continue;
+      for (SampleChannel ch : SampleChannel.all()) {
+        row[ch.ordinal()] = batch.has(i, ch) ? batch.value(i, ch) : Double.NaN;
+      }
+      insert(batch.deviceId(i), batch.tsMicros(i), row, horizon);
+    }
+  }
+
+  /** Loads the last {@code hours} from samples. Runs once, after the app is up. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warm() {
+    if (!enabled) return;
+    long started = System.nanoTime();
+    Instant since = Instant.now().minusSeconds(hours * 3600L);
+    long horizon = SampleBatch.toMicros(since);
+    StringBuilder cols = new StringBuilder("device_id, ts");
+    for (SampleChannel ch : SampleChannel.all()) cols.append(", ").append(ch.column());
+    String sql = "SELECT " + cols + " FROM samples WHERE ts >= ? ORDER BY device_id, ts";
+
+    long[] loaded = {0};
+    double[] row = new double[CHANNELS];
+    try {
+      // a transaction so the driver streams with a cursor instead of buffering everything
+      tx.executeWithoutResult(status -> jdbc.query(con -> {
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setFetchSize(10_000);
+        ps.setTimestamp(1, Timestamp.from(since));
+        return ps;
+      }, (ResultSet rs) -> {
+        UUID deviceId = rs.getObject(1, UUID.class);
+        long ts = SampleBatch.toMicros(rs.getTimestamp(2).toInstant());
+        for (int c = 0; c < CHANNELS; c++) row[c] = doubleOrNaN(rs, 3 + c);
+        insert(deviceId, ts, row, horizon);
+        loaded[0]++;
+      }));
+      ready = true;
+      log.info("[HOT-TIER] warmed {} samples for {} devices ({} KiB) in {} ms",
+          loaded[0], rings.size(), totals()[1] / 1024, (System.nanoTime() - started) / 1_000_000);
+    } catch (RuntimeException e) {
+      log.warn("[HOT-TIER] warm-up failed, metrics stay on SQL: {}", e.getMessage());
+    }
+  }
+
+  /** Drops expired samples and rings of devices that went quiet. */
+  @Scheduled(fixedDelayString = "${app.hot-tier.sweep-ms:60000}")
+  public void sweep() {
+    if (!enabled) return;
+    long horizon = SampleBatch.toMicros(Instant.now()) - spanMicros;
+    for (UUID id : rings.keySet()) {
+      // retire and unmap in one step, under the ring's monitor, so no insert lands in a dropped ring
+      rings.computeIfPresent(id, (k, r) -> r.retireIfEmpty(horizon) ? null : r);
+    }
+  }
+
+  /** Per-device sample count and bytes held (allocated capacity, not just used slots). */
+  public Map<String, Object> footprint() {
+    Map<String, Object> devices = new LinkedHashMap<>();
+    rings.forEach((id, r) -> devices.put(id.toString(), r.footprint()));
+    long[] t = totals();
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("enabled", enabled);
+    out.put("ready", ready);
+    out.put("hours", hours);
+    out.put("samples", t[0]);
+    out.put("bytes", t[1]);
+    out.put("devices", devices);
+    return out;
+  }
+
+  /** {samples, bytes} over all rings. */
+  private long[] totals() {
+    long n = 0, bytes = 0;
+    for (Ring r : rings.values()) {
+      synchronized (r) {
+        n += r.size;
+        bytes += (long) r.ts.length * BYTES_PER_SAMPLE;
+      }
+    }
+    return new long[]{n, bytes};
+  }
+
+  /** Inserts into the device's ring, retrying with a fresh ring if sweep just retired it. */
+  private void insert(UUID deviceId, long t, double[] row, long horizon) {
+    while (!rings.computeIfAbsent(deviceId, id -> new Ring()).insert(t, row, horizon)) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private static double doubleOrNaN(ResultSet rs, int col) throws SQLException {
+    double v = rs.getDouble(col);
+    return rs.wasNull() ? Double.NaN : v;
+  }
+
+  /**
+   * One device's samples, oldest at {@code head}, sorted by ts. Grows by doubling up to
+   * maxPerDevice (rounded up to a power of two), then overwrites the oldest sample.
+   */
+  private final class Ring {
+    long[] ts = new long[INITIAL_CAPACITY];
+    double[][] values = new double[CHANNELS][INITIAL_CAPACITY];
+    int head, size;
+    /** Newest ts dropped to make room (not by expiry); the ring is complete only after it. */
+    long overwrittenTs = Long.MIN_VALUE;
+    /** Set by sweep when the ring is unmapped; inserts must go to a new ring then. */
+    boolean retired;
+
+    private int slot(int i) { return (head + i) & (ts.length - 1); }   // capacity is a power of two
+
+    /** Returns false, without inserting, if the ring has been retired. */
+    synchronized boolean insert(long t, double[] row, long horizon) {
+      if (retired) return false;
+      evict(horizon);
+      // find the position from the tail: samples almost always arrive in order
+      int pos = size;
+      while (pos > 0 && ts[slot(pos - 1)] > t) pos--;
+      if (pos > 0 && ts[slot(pos - 1)] == t) return true;   // already held (warm-up overlap, replay)
+      if (size == ts.length) {
+        if (ts.length < maxPerDevice) {
+          grow();
+        } else {
+          if (pos == 0) {   // older than everything in a full ring
+            overwrittenTs = Math.max(overwrittenTs, t);
+            return true;
+          }
+          overwrittenTs = Math.max(overwrittenTs, ts[head]);
+          head = slot(1);
+          size--;
+          pos--;
+        }
+      }
+      for (int i = size; i > pos; i--) {
+        int to = slot(i), from = slot(i - 1);
+        ts[to] = ts[from];
+        for (int c = 0; c < CHANNELS; c++) values[c][to] = values[c][from];
+      }
+      int s = slot(pos);
+      ts[s] = t;
+      for (int c = 0; c < CHANNELS; c++) values[c][s] = row[c];
+      size++;
+      return true;
+    }
+
+    /** Drops samples older than horizon; returns what is left. */
+    synchronized int evict(long horizon) {
+      while (size > 0 && ts[head] < horizon) {
+        head = slot(1);
+        size--;
+      }
+      return size;
+    }
+
+    /** Evicts, and marks the ring retired if nothing is left; returns whether it was. */
+    synchronized boolean retireIfEmpty(long horizon) {
+      if (evict(horizon) == 0) retired = true;
+      return retired;
+    }
+
+    synchronized boolean completeSince(long from) {
+      return overwrittenTs < from;
+    }
+
+    synchronized WindowAccumulator scan(long from, WindowAccumulator acc) {
+      int tvoc = SampleChannel.TVOC.ordinal();
+      int ch2o = SampleChannel.FORMALDEHYDE.ordinal();
+      int benz = SampleChannel.BENZENE.ordinal();
+      for (int i = size - 1; i >= 0; i--) {
+        int s = slot(i);
+        if (ts[s] < from) break;
+        acc.add(ts[s], values[tvoc][s], values[ch2o][s], values[benz][s]);
+      }
+      return acc;
+    }
+
+    synchronized Map<String, Object> footprint() {
+      Map<String, Object> m = new LinkedHashMap<>();
+      m.put("samples", size);
+      m.put("capacity", ts.length);
+      m.put("bytes", (long) ts.length * BYTES_PER_SAMPLE);
+      return m;
+    }
+
+    private void grow() {
+      int cap = ts.length * 2;
+      long[] nts = new long[cap];
+      double[][] nvals = new double[CHANNELS][cap];
+      for (int i = 0; i < size; i++) {
+        int s = slot(i);
+        nts[i] = ts[s];
+        for (int c = 0; c < CHANNELS; c++) nvals[c][i] = values[c][s];
+      }
+      ts = nts;
+      values = nvals;
+      head = 0;
+    }
+  }
+}
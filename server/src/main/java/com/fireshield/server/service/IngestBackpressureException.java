@@ -0,0 +1,17 @@
+// service/IngestBackpressureException.java
+package com.fireshield.server.service;
+
+/**
+ * Thrown when the write-behind queue can't take a batch.
+ * Mapped to 429 + Retry-After by SampleController.
+ */
+public class IngestBackpressureException extends RuntimeException {
+  private final int retryAfterSeconds;
+
+  public IngestBackpressureException(String message, int retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public int getRetryAfterSeconds() { return retryAfterSeconds; }
+}
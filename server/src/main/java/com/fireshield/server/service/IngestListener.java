@@ -0,0 +1,21 @@
+// service/IngestListener.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.SampleBatch;
+
+/**
+ * Gets every batch right after it is written; rows with status STORED are new in the
+ * database (duplicates and failures are not). Runs on the writing thread, so
+ * implementations must be quick and must not query per sample.
+ *
+ * Listeners run in @Order: first those that derive stored or in-memory data from the
+ * batch ({@link #ORDER_DATA}), then those that notify ({@link #ORDER_NOTIFY}), and
+ * IngestWatermarks last, so a cache entry stamped with the new watermark can only have
+ * been computed after the derived data was updated.
+ */
+public interface IngestListener {
+  int ORDER_DATA = 0;
+  int ORDER_NOTIFY = 100;
+
+  void onStored(SampleBatch batch);
+}
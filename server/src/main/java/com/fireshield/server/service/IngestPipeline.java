@@ -0,0 +1,173 @@
+// service/IngestPipeline.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.SampleBatch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind ingest (app.ingest.mode=async).
+ * Validated batches are queued and acknowledged right away. A few flusher threads
+ * drain the queue, merge batches from many devices and commit each group in one
+ * transaction. The queue is bounded in rows; when it is full, callers get
+ * {@link IngestBackpressureException} (429) instead of blocking a request thread.
+ */
+@Service
+public class IngestPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(IngestPipeline.class);
+
+  private final SampleStore store;
+  private final boolean enabled;
+  private final int flushers;
+  private final int flushMaxRows;
+  private final int retryAfterSeconds;
+  private final long drainTimeoutMs;
+
+  private final LinkedBlockingQueue<SampleBatch> queue = new LinkedBlockingQueue<>();
+  private final Semaphore capacity;
+  private final AtomicInteger queuedRows = new AtomicInteger();
+  private final Timer flushTimer;
+  private volatile boolean accepting;
+  private ExecutorService pool;
+
+  public IngestPipeline(
+      SampleStore store,
+      MeterRegistry meters,
+      @Value("${app.ingest.mode:sync}") String mode,
+      @Value("${app.ingest.queue-capacity-rows:50000}") int queueCapacityRows,
+      @Value("${app.ingest.flushers:2}") int flushers,
+      @Value("${app.ingest.flush-max-rows:5000}") int flushMaxRows,
+      @Value("${app.ingest.retry-after-seconds:2}") int retryAfterSeconds,
+      @Value("${app.ingest.drain-timeout-ms:20000}") long drainTimeoutMs
+  ) {
+    this.store = store;
+    this.enabled = "async".equalsIgnoreCase(mode);
+    this.capacity = new Semaphore(Math.max(1, queueCapacityRows));
+    this.flushers = Math.max(1, flushers);
+    this.flushMaxRows = Math.max(1, flushMaxRows);
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.drainTimeoutMs = drainTimeoutMs;
+
+    Gauge.builder("fireshield.ingest.queue.rows", queuedRows, AtomicInteger::get)
+        .description("Sample rows waiting in the write-behind queue").register(meters);
+    Gauge.builder("fireshield.ingest.queue.batches", queue, LinkedBlockingQueue::size)
+        .description("Batches waiting in the write-behind queue").register(meters);
+    this.flushTimer = Timer.builder("fireshield.ingest.flush")
+        .description("Time to commit one merged write-behind flush")
+        .publishPercentiles(0.5, 0.95, 0.99).register(meters);
+  }
+
+  public boolean isEnabled() { return enabled; }
+
+  @PostConstruct
+  void start() {
+    if (!enabled) return;
+    AtomicInteger n = new AtomicInteger();
+    pool = Executors.newFixedThreadPool(flushers, r -> {
+      Thread t = new Thread(r, "ingest-flusher-" + n.incrementAndGet());
+      t.setDaemon(false);
+      return t;
+    });
+    accepting = true;
+    for (int i = 0; i < flushers; i++) pool.submit(this::flushLoop);
+    log.info("[INGEST] write-behind enabled: {} flushers, {} rows queue capacity", flushers, capacity.availablePermits());
+  }
+
+  /** Queues a validated batch; never blocks. */
+  public void submit(SampleBatch batch) {
+    if (batch.isEmpty()) return;
+    if (!accepting) {
+      throw new IngestBackpressureException("Ingest queue is shutting down", retryAfterSeconds);
+    }
+    if (!capacity.tryAcquire(batch.size())) {
+      throw new IngestBackpressureException("Ingest queue is full", retryAfterSeconds);
+    }
+    queuedRows.addAndGet(batch.size());
+    queue.add(batch);
+  }
+
+  private void flushLoop() {
+    List<SampleBatch> group = new ArrayList<>();
+    while (accepting || !queue.isEmpty()) {
+      try {
+        SampleBatch first = queue.poll(250, TimeUnit.MILLISECONDS);
+        if (first == null) continue;
+        group.add(first);
+        int rows = first.size();
+        SampleBatch next;
+        while (rows < flushMaxRows && (next = queue.peek()) != null && rows + next.size() <= flushMaxRows) {
+          next = queue.poll();
+          if (next == null) break;
+          group.add(next);
+          rows += next.size();
+        }
+        flush(group, rows);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.error("[INGEST] write-behind flush failed", e);
+      } finally {
+        for (SampleBatch b : group) {
+          queuedRows.addAndGet(-b.size());
+          capacity.release(b.size());
+        }
+        group.clear();
+      }
+    }
+  }
+
+  private void flush(List<SampleBatch> group, int rows) {
+    SampleBatch merged;
+    if (group.size() == 1) {
+      merged = group.get(0);
+    } else {
+      merged = new SampleBatch(rows);
+      for (SampleBatch b : group) {
+        for (int i = 0; i < b.size(); i++) {
+          if (b.status(i) == SampleBatch.PENDING) merged.copyRow(b, i);  // skip pre-checked duplicates
+        }
+      }
+    }
+    long started = System.nanoTime();
+    store.writeAtomically(merged);
+    flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    int failed = merged.count(SampleBatch.FAILED);
+    if (failed > 0) log.warn("[INGEST] write-behind dropped {} of {} rows", failed, rows);
+  }
+
+  /** Stops taking new batches and drains what is already queued before the datasource closes. */
+  @PreDestroy
+  void drain() throws InterruptedException {
+    if (pool == null) return;
+    accepting = false;
+    pool.shutdown();
+    if (!pool.awaitTermination(drainTimeoutMs, TimeUnit.MILLISECONDS)) {
+      log.warn("[INGEST] drain timed out with {} rows still queued", queuedRows.get());
+      pool.shutdownNow();
+      return;
+    }
+    // a request may have slipped in between the flag flip and the flushers exiting
+    List<SampleBatch> rest = new ArrayList<>();
+    queue.drainTo(rest);
+    for (SampleBatch b : rest) flush(List.of(b), b.size());
+    log.info("[INGEST] write-behind queue drained");
+  }
+}
@@ -0,0 +1,53 @@
+// service/IngestWatermarks.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.SampleBatch;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-device ingest version: bumped every time rows are stored for a device. The sum
+ * over a scope changes exactly when any of its devices got new data, so it serves as
+ * the validity stamp for cached read results (see ResponseCache). In-process only;
+ * each instance tracks what it ingested.
+ */
+@Service
+@Order(Ordered.LOWEST_PRECEDENCE)   // after the rollups are upserted, see IngestListener
+public class IngestWatermarks implements IngestListener {
+
+  private final Map<UUID, AtomicLong> versions = new ConcurrentHashMap<>();
+  /** Bumped by bulk changes that bypass ingest (rollup rebuilds, archived days); invalidates every scope. */
+  private final AtomicLong epoch = new AtomicLong();
+
+  @Override
+  public void onStored(SampleBatch batch) {
+    UUID last = null;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != SampleBatch.STORED) continue;
+      UUID id = batch.deviceId(row);
+      if (id.equals(last)) continue;   // batches are almost always a single device
+      versions.computeIfAbsent(id, k -> new AtomicLong()).incrementAndGet();
+      last = id;
+    }
+  }
+
+  /** Current watermark for the scope; compare for equality only. */
+  public long watermark(DeviceScope scope) {
+    long sum = epoch.get() << 32;
+    for (UUID id : scope.deviceIds()) {
+      AtomicLong v = versions.get(id);
+      if (v != null) sum += v.get();
+    }
+    return sum;
+  }
+
+  public void bumpAll() {
+    epoch.incrementAndGet();
+  }
+}
@@ -7,6 +7,7 @@ import com.fireshield.server.api.dto.InsightsReport.AiReport;
 import com.fireshield.server.api.dto.InsightsAdvice; // keep your existing simple DTO
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -17,8 +18,21 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @Service
 public class InsightsService {
@@ -27,7 +41,10 @@ public class InsightsService {
 
   private final MetricsService metrics;
   private final ObjectMapper mapper = new ObjectMapper();
-  private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+  private final SingleFlight<String, Timed<?>> flights = new SingleFlight<>();
+  private final BoundedCache<String, Timed<?>> modelCache;
+  private final long modelCacheTtlMs;
+  private final HttpClient http;
 
   private final String primaryModel;
   private final String fallbackModel;
@@ -35,14 +52,54 @@ public class InsightsService {
   private final double temperature;
   private final String apiKey;
 
+  // model call strategy: hedged (start the next model after a latency-percentile delay) or sequential
+  private final boolean hedging;
+  private final double hedgePercentile;
+  private final long hedgeMinMs, hedgeMaxMs;
+  private final long deadlineMs;
+  private final int breakerFailures;
+  private final long breakerOpenMs;
+  private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+  private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService hedgeTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "insights-hedge");
+    t.setDaemon(true);
+    return t;
+  });
+
   public InsightsService(
       MetricsService metrics,
       @Value("${app.gemini.model:gemini-2.5-flash}") String model,
       @Value("${app.gemini.maxOutputTokens:512}") int maxOutputTokens,
       @Value("${app.gemini.temperature:0.3}") double temperature,
-      @Value("${GOOGLE_API_KEY:}") String apiKeyFromSpring
+      @Value("${GOOGLE_API_KEY:}") String apiKeyFromSpring,
+      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+      @Value("${app.insights.cache.max-entries:500}") int modelCacheSize,
+      @Value("${app.insights.cache.ttl-seconds:900}") long modelCacheTtlSeconds,
+      @Value("${app.insights.strategy:hedged}") String strategy,
+      @Value("${app.insights.hedge.percentile:0.9}") double hedgePercentile,
+      @Value("${app.insights.hedge.min-delay-ms:300}") long hedgeMinMs,
+      @Value("${app.insights.hedge.max-delay-ms:3000}") long hedgeMaxMs,
+      @Value("${app.insights.deadline-ms:6000}") long deadlineMs,
+      @Value("${app.insights.breaker.failures:5}") int breakerFailures,
+      @Value("${app.insights.breaker.open-seconds:30}") long breakerOpenSeconds
   ) {
     this.metrics = metrics;
+    this.hedging = !"sequential".equalsIgnoreCase(strategy);
+    this.hedgePercentile = hedgePercentile;
+    this.hedgeMinMs = hedgeMinMs;
+    this.hedgeMaxMs = Math.max(hedgeMinMs, hedgeMaxMs);
+    this.deadlineMs = deadlineMs;
+    this.breakerFailures = breakerFailures;
+    this.breakerOpenMs = breakerOpenSeconds * 1000;
+    this.modelCache = new BoundedCache<>(modelCacheSize);
+    this.modelCacheTtlMs = modelCacheTtlSeconds * 1000;
+    HttpClient.Builder httpBuilder = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10));
+    if (virtualThreads) {
+      // response handling runs on virtual threads too, so slow model calls don't pin a pool
+      httpBuilder.executor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+    this.http = httpBuilder.build();
     this.primaryModel = model;
     this.fallbackModel = "gemini-2.0-flash";
     this.maxOutputTokens = maxOutputTokens;
@@ -61,76 +118,236 @@ public class InsightsService {
   // ---------------------------------------------------------------------------
   // OLD endpoint support: /insights (simple advice you already have)
   // ---------------------------------------------------------------------------
-  public Map<String, Object> generateInsights(Integer hoursWindow) {
+  public Map<String, Object> generateInsights(Integer hoursWindow, DeviceScope scope) {
     int hours = (hoursWindow == null || hoursWindow <= 0) ? 24 : hoursWindow;
-    Map<String,Object> m = metrics.overviewForHours(hours);
+    Map<String,Object> m = metrics.overviewForHours(hours, scope);
     String severity = String.valueOf(m.get("severity"));
 
-    String compactPrompt = buildCompactPrompt(m, hours);
-    String ultraPrompt   = buildUltraPrompt(m, hours);
-
-    try {
-      if (apiKey.isBlank()) {
-        return wrapSimple(hours, m, fallbackAdvice(severity), false, primaryModel);
-      }
-
-      HttpResponse<String> resp1 = callModel(primaryModel, compactPrompt, maxOutputTokens);
-      InsightsAdvice adv1 = parseAdviceFromBody(resp1.body(), severity);
-      if (resp1.statusCode()/100 == 2 && adv1 != null) {
-        return wrapSimple(hours, m, adv1, true, primaryModel);
-      }
+    String key = "advice|" + owner(scope) + "|" + hours + "|" + severity
+        + "|tvoc=" + quantize(m.get("avg_tvoc_ppb"), TVOC_STEP_PPB)
+        + "|ch2o=" + quantize(m.get("avg_formaldehyde_ppm"), PPM_STEP)
+        + "|benz=" + quantize(m.get("avg_benzene_ppm"), PPM_STEP);
+    Served<Advice> s = cachedModelCall(key, () -> askAdvice(m, hours, severity), Advice::fromModel);
 
-      HttpResponse<String> resp2 = callModel(primaryModel, ultraPrompt, Math.max(320, maxOutputTokens));
-      InsightsAdvice adv2 = parseAdviceFromBody(resp2.body(), severity);
-      if (resp2.statusCode()/100 == 2 && adv2 != null) {
-        return wrapSimple(hours, m, adv2, true, primaryModel);
-      }
-
-      HttpResponse<String> resp3 = callModel(fallbackModel, ultraPrompt, 320);
-      InsightsAdvice adv3 = parseAdviceFromBody(resp3.body(), severity);
-      if (resp3.statusCode()/100 == 2 && adv3 != null) {
-        return wrapSimple(hours, m, adv3, true, fallbackModel);
-      }
-
-      return wrapSimple(hours, m, fallbackAdvice(severity), false, primaryModel);
+    Map<String, Object> out = wrapSimple(hours, m, s.value().advice(), s.value().fromModel(), s.value().model());
+    out.put("cached", s.cached());
+    out.put("cacheAgeSeconds", s.ageSeconds());
+    return out;
+  }
 
-    } catch (Exception e) {
-      log.warn("[INSIGHTS] exception calling Gemini; using fallback. {}", e.toString());
-      return wrapSimple(hours, m, fallbackAdvice(severity), false, primaryModel);
-    }
+  private record Advice(InsightsAdvice advice, boolean fromModel, String model) {}
+
+  private Advice askAdvice(Map<String,Object> m, int hours, String severity) {
+    // primary with the compact prompt, hedged by the fallback model with the ultra-minified one
+    Answer<InsightsAdvice> a = hedged(List.of(
+        new Attempt<>(primaryModel, buildCompactPrompt(m, hours), maxOutputTokens,
+            body -> parseAdviceFromBody(body, severity)),
+        new Attempt<>(fallbackModel, buildUltraPrompt(m, hours), 320,
+            body -> parseAdviceFromBody(body, severity))));
+    if (a == null) return new Advice(fallbackAdvice(severity), false, primaryModel);
+    return new Advice(a.value(), true, a.model());
   }
 
   // ---------------------------------------------------------------------------
   // NEW endpoint support: /insights/report (rich awareness report)
   // ---------------------------------------------------------------------------
-  public InsightsReport generateAwarenessReport(Integer hoursWindow) {
+  public InsightsReport generateAwarenessReport(Integer hoursWindow, DeviceScope scope) {
     int hours = (hoursWindow == null || hoursWindow <= 0) ? 24 : hoursWindow;
 
-    Map<String,Object> m = metrics.detailedMetrics(hours);
+    Map<String,Object> m = metrics.detailedMetrics(hours, scope);
     String severity = String.valueOf(m.get("severity"));
+
+    String key = "report|" + owner(scope) + "|" + hours + "|" + severity
+        + "|tvoc=" + quantize(m.get("avg_tvoc_ppb"), TVOC_STEP_PPB)
+        + "|max=" + quantize(m.get("max_tvoc_ppb"), 4 * TVOC_STEP_PPB)
+        + "|p95=" + quantize(m.get("p95_tvoc_ppb"), 2 * TVOC_STEP_PPB)
+        + "|slope=" + slopeBucket(m.get("tvoc_slope_ppb_per_hr"))
+        + "|elev=" + quantize(m.get("fraction_time_elevated"), FRACTION_STEP)
+        + "|crit=" + quantize(m.get("fraction_time_critical"), FRACTION_STEP)
+        + "|ch2o=" + quantize(m.get("avg_formaldehyde_ppm"), PPM_STEP)
+        + "|benz=" + quantize(m.get("avg_benzene_ppm"), PPM_STEP);
+    Served<Report> s = cachedModelCall(key, () -> askReport(m, hours, severity), Report::fromModel);
+
+    return new InsightsReport(hours, m, s.value().ai(), s.value().model(),
+        s.value().fromModel() ? "model" : "fallback", s.cached(), s.ageSeconds());
+  }
+
+  private record Report(AiReport ai, boolean fromModel, String model) {}
+
+  private Report askReport(Map<String,Object> m, int hours, String severity) {
     String prompt = buildReportPrompt(m, hours);
+    Answer<AiReport> a = hedged(List.of(
+        new Attempt<>(primaryModel, prompt, Math.max(640, maxOutputTokens), this::parseReport),
+        new Attempt<>(fallbackModel, prompt, 640, this::parseReport)));
+    if (a == null) return new Report(fallbackReport(severity), false, primaryModel);
+    return new Report(a.value(), true, a.model());
+  }
 
-    try {
-      AiReport ai = null;
-      String modelUsed = primaryModel;
-
-      if (!apiKey.isBlank()) {
-        HttpResponse<String> resp = callModel(primaryModel, prompt, Math.max(640, maxOutputTokens));
-        ai = parseReport(resp.body());
-        if (!(resp.statusCode()/100 == 2 && ai != null)) {
-          HttpResponse<String> resp2 = callModel(fallbackModel, prompt, 640);
-          ai = parseReport(resp2.body());
-          modelUsed = fallbackModel;
-        }
+  // ---------------------- HEDGED MODEL CALLS ----------------------
+
+  /** One model call and how to turn its response body into a result (null = unusable). */
+  private record Attempt<T>(String model, String prompt, int outTokens, Function<String, T> parse) {}
+
+  private record Answer<T>(T value, String model) {}
+
+  /**
+   * Runs the attempts in order and returns the first usable answer, or null.
+   * Attempt i+1 starts as soon as attempt i fails, or (when hedging) once attempt i has
+   * been outstanding longer than its model's recent latency percentile. Models whose
+   * breaker is open are skipped. Whatever is still running when an answer arrives, or
+   * when the overall deadline passes, is cancelled; the latter counts as a failure.
+   */
+  private <T> Answer<T> hedged(List<Attempt<T>> attempts) {
+    if (apiKey.isBlank()) return null;
+
+    CompletableFuture<Answer<T>> winner = new CompletableFuture<>();
+    List<CompletableFuture<HttpResponse<String>>> calls = new CopyOnWriteArrayList<>();
+    AtomicBoolean[] started = new AtomicBoolean[attempts.size()];
+    for (int i = 0; i < started.length; i++) started[i] = new AtomicBoolean();
+    AtomicInteger finished = new AtomicInteger();
+    AtomicBoolean timedOut = new AtomicBoolean();
+
+    IntConsumer[] launch = new IntConsumer[1];
+    launch[0] = i -> {
+      if (i >= attempts.size() || winner.isDone() || !started[i].compareAndSet(false, true)) return;
+      Attempt<T> a = attempts.get(i);
+      if (!breaker(a.model()).allow()) {
+        // skipped: move straight on to the next attempt
+        launch[0].accept(i + 1);
+        if (finished.incrementAndGet() == attempts.size()) winner.complete(null);
+        return;
       }
-      if (ai == null) ai = fallbackReport(severity);
+      long t0 = System.nanoTime();
+      CompletableFuture<HttpResponse<String>> call = callModelAsync(a.model(), a.prompt(), a.outTokens());
+      calls.add(call);
+      if (hedging && i + 1 < attempts.size()) {
+        hedgeTimer.schedule(() -> launch[0].accept(i + 1), hedgeDelayMs(a.model()), TimeUnit.MILLISECONDS);
+      }
+      call.whenComplete((resp, err) -> {
+        T value = null;
+        if (err instanceof CancellationException && !timedOut.get()) {
+          // lost the race to another attempt; says nothing about the model's health
+          breaker(a.model()).release();
+        } else if (err instanceof CancellationException) {
+          // still hanging at the deadline: the way a degraded upstream usually shows
+          if (breaker(a.model()).onFailure()) {
+            log.warn("[INSIGHTS] breaker opened for {} (no answer within {} ms)", a.model(), deadlineMs);
+          }
+        } else if (err != null || resp.statusCode() / 100 != 2) {
+          if (breaker(a.model()).onFailure()) {
+            log.warn("[INSIGHTS] breaker opened for {} ({})", a.model(), err != null ? err.toString() : "HTTP " + resp.statusCode());
+          }
+        } else {
+          latency(a.model()).record((System.nanoTime() - t0) / 1_000_000);
+          breaker(a.model()).onSuccess();
+          value = a.parse().apply(resp.body());
+        }
+        if (value != null) {
+          winner.complete(new Answer<>(value, a.model()));
+        } else {
+          launch[0].accept(i + 1);
+          if (finished.incrementAndGet() == attempts.size()) winner.complete(null);
+        }
+      });
+    };
 
-      return new InsightsReport(hours, m, ai, modelUsed, (apiKey.isBlank() ? "fallback" : "model"));
+    launch[0].accept(0);
+    try {
+      return winner.get(deadlineMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      timedOut.set(true);
+      log.warn("[INSIGHTS] no model answer within {} ms; serving fallback", deadlineMs);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    } finally {
+      winner.complete(null);   // stops pending hedges from launching
+      for (CompletableFuture<HttpResponse<String>> c : calls) c.cancel(true);
+    }
+  }
 
-    } catch (Exception e) {
-      log.warn("[INSIGHTS] report error; using fallback. {}", e.toString());
-      return new InsightsReport(hours, m, fallbackReport(severity), primaryModel, "fallback");
+  /** How long to wait on a model before hedging: its recent latency percentile, clamped. */
+  private long hedgeDelayMs(String model) {
+    long p = latency(model).percentile(hedgePercentile, 20, hedgeMaxMs / 2);
+    return Math.max(hedgeMinMs, Math.min(hedgeMaxMs, p));
+  }
+
+  private CircuitBreaker breaker(String model) {
+    return breakers.computeIfAbsent(model, k -> new CircuitBreaker(breakerFailures, breakerOpenMs));
+  }
+
+  private LatencyTracker latency(String model) {
+    return latencies.computeIfAbsent(model, k -> new LatencyTracker(200));
+  }
+
+  @PreDestroy
+  void shutdownHedgeTimer() {
+    hedgeTimer.shutdownNow();
+  }
+
+  // ---------------------- MODEL RESULT CACHE ----------------------
+
+  // Quantization steps for the semantic cache key: inputs within one step reuse the answer.
+  private static final double TVOC_STEP_PPB = 25.0;
+  private static final double PPM_STEP = 0.01;
+  private static final double FRACTION_STEP = 0.05;
+
+  private record Timed<T>(T value, long createdAtMs) {}
+
+  /** A result and where it came from; ageSeconds is 0 for a fresh call. */
+  private record Served<T>(T value, boolean cached, long ageSeconds) {}
+
+  /**
+   * Serves a model result from the semantic cache, or makes the call once for all
+   * concurrent requests with the same key. Only results the model actually produced
+   * are cached; fallbacks are retried on the next request.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> Served<T> cachedModelCall(String key, Supplier<T> call, Predicate<T> cacheable) {
+    Timed<T> hit = (Timed<T>) modelCache.get(key);
+    if (hit != null) {
+      return new Served<>(hit.value(), true, ageSeconds(hit));
     }
+    SingleFlight.Result<Timed<?>> r = flights.run(key, () -> {
+      Timed<T> fresh = new Timed<>(call.get(), System.currentTimeMillis());
+      if (cacheable.test(fresh.value())) modelCache.put(key, fresh, modelCacheTtlMs);
+      return fresh;
+    });
+    Timed<T> t = (Timed<T>) r.value();
+    // requests that joined someone else's call are served a shared result
+    return new Served<>(t.value(), !r.leader(), r.leader() ? 0 : ageSeconds(t));
+  }
+
+  /**
+   * Cache keys start with the scope's owner: answers quote the exact metrics they were
+   * built from, so only the same owner's requests may reuse them.
+   */
+  private static String owner(DeviceScope scope) {
+    return String.valueOf(scope.ownerId());
+  }
+
+  private static long ageSeconds(Timed<?> t) {
+    return Math.max(0, (System.currentTimeMillis() - t.createdAtMs()) / 1000);
+  }
+
+  /** Rounds a metric to the nearest step; "-" for missing values. */
+  static String quantize(Object v, double step) {
+    if (!(v instanceof Number n) || Double.isNaN(n.doubleValue())) return "-";
+    return Long.toString(Math.round(n.doubleValue() / step));
+  }
+
+  /** Trend direction in coarse bands (ppb/h): falling fast/falling/flat/rising/rising fast. */
+  static String slopeBucket(Object v) {
+    if (!(v instanceof Number n)) return "-";
+    double s = n.doubleValue();
+    if (s <= -20) return "--";
+    if (s <= -5)  return "-1";
+    if (s < 5)    return "0";
+    if (s < 20)   return "+1";
+    return "++";
   }
 
   // ---------------------- PROMPTS ----------------------
@@ -185,6 +402,7 @@ public class InsightsService {
       min_tvoc_ppb=%s
       max_tvoc_ppb=%s
       stddev_tvoc_ppb=%s
+      p95_tvoc_ppb=%s
       tvoc_slope_ppb_per_hr=%s
       fraction_time_elevated=%s
       fraction_time_critical=%s
@@ -208,6 +426,7 @@ public class InsightsService {
         m.get("min_tvoc_ppb"),
         m.get("max_tvoc_ppb"),
         m.get("stddev_tvoc_ppb"),
+        m.get("p95_tvoc_ppb"),
         m.get("tvoc_slope_ppb_per_hr"),
         m.get("fraction_time_elevated"),
         m.get("fraction_time_critical"),
@@ -415,20 +634,22 @@ public class InsightsService {
 
   // ---------------------- HTTP & JSON UTIL ----------------------
 
-  private HttpResponse<String> callModel(String model, String prompt, int outTokens) throws Exception {
+  /** Starts one model call; the caller bounds the wait (see hedged) and cancels losers. */
+  private CompletableFuture<HttpResponse<String>> callModelAsync(String model, String prompt, int outTokens) {
     String url = "https://generativelanguage.googleapis.com/v1/models/" + model + ":generateContent?key=" + apiKey;
-    String bodyJson = buildRequestJson(prompt, outTokens);
+    String bodyJson;
+    try {
+      bodyJson = buildRequestJson(prompt, outTokens);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
     HttpRequest req = HttpRequest.newBuilder()
                 .uri(URI.create(url))
+                .timeout(Duration.ofMillis(deadlineMs))
                 .header("Content-Type", "application/json; charset=UTF-8")
                 .POST(HttpRequest.BodyPublishers.ofString(bodyJson, StandardCharsets.UTF_8))
                 .build();
-
-        // --- MODIFICATION ---
-        // Use sendAsync and enforce a 5-second timeout on getting the result.
-        // This prevents the thread from hanging indefinitely.
-        CompletableFuture<HttpResponse<String>> future = http.sendAsync(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-        return future.get(5, TimeUnit.SECONDS); // This will throw a TimeoutException if it takes too long
+    return http.sendAsync(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
   }
 
   private String buildRequestJson(String prompt, int outTokens) throws Exception {
@@ -0,0 +1,33 @@
+// service/LatencyTracker.java
+package com.fireshield.server.service;
+
+import java.util.Arrays;
+
+/** The last N call latencies (ms) of one upstream, for percentile-based hedge delays. */
+public class LatencyTracker {
+
+  private final long[] ring;
+  private int next, size;
+
+  public LatencyTracker(int capacity) {
+    this.ring = new long[Math.max(1, capacity)];
+  }
+
+  public synchronized void record(long ms) {
+    ring[next] = ms;
+    next = (next + 1) % ring.length;
+    if (size < ring.length) size++;
+  }
+
+  /** The p-th percentile (0..1) of recorded latencies, or {@code fallback} with fewer than minSamples. */
+  public long percentile(double p, int minSamples, long fallback) {
+    long[] copy;
+    synchronized (this) {
+      if (size < minSamples) return fallback;
+      copy = Arrays.copyOf(ring, size);
+    }
+    Arrays.sort(copy);
+    int idx = (int) Math.ceil(Math.max(0, Math.min(1, p)) * copy.length) - 1;
+    return copy[Math.max(0, idx)];
+  }
+}
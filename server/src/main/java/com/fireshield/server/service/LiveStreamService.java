@@ -0,0 +1,271 @@
+// service/LiveStreamService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.api.dto.LiveEvent;
+import com.fireshield.server.api.dto.SamplePoint;
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Push fan-out of newly stored samples and alerts over SSE (GET /stream).
+ * Each device has a small ring buffer of recent events that new subscribers get
+ * replayed, then live events. Every subscriber has its own bounded queue drained
+ * by a shared sender pool; a slow client drops its oldest events (and is told how
+ * many) instead of slowing ingest or other clients. Samples older than the alert
+ * engine's {@code app.alerts.max-age-seconds} (backfills, imports) are not pushed.
+ */
+@Service
+@Order(IngestListener.ORDER_NOTIFY)
+public class LiveStreamService implements IngestListener {
+
+  private static final Logger log = LoggerFactory.getLogger(LiveStreamService.class);
+
+  private final int ringSize;
+  private final int subscriberBuffer;
+  private final long timeoutMs;
+  private final long maxAgeMicros;
+
+  private final Map<UUID, Deque<LiveEvent>> rings = new ConcurrentHashMap<>();
+  private final Map<UUID, Set<Subscriber>> byDevice = new ConcurrentHashMap<>();
+  private final ExecutorService senders;
+  private final ScheduledExecutorService heartbeat;
+
+  public LiveStreamService(
+      @Value("${app.live.replay-per-device:100}") int ringSize,
+      @Value("${app.live.subscriber-buffer:256}") int subscriberBuffer,
+      @Value("${app.live.sender-threads:4}") int senderThreads,
+      @Value("${app.live.timeout-minutes:30}") long timeoutMinutes,
+      @Value("${app.alerts.max-age-seconds:300}") long maxAgeSeconds
+  ) {
+    this.ringSize = Math.max(0, ringSize);
+    this.subscriberBuffer = Math.max(1, subscriberBuffer);
+    this.timeoutMs = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+    this.maxAgeMicros = Math.max(1, maxAgeSeconds) * 1_000_000L;
+    AtomicInteger n = new AtomicInteger();
+    this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+      Thread t = new Thread(r, "live-sender-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "live-heartbeat");
+      t.setDaemon(true);
+      return t;
+    });
+    this.heartbeat.scheduleAtFixedRate(this::ping, 20, 20, TimeUnit.SECONDS);
+  }
+
+  /** Opens a stream over the given devices, replaying each device's recent events first. */
+  public SseEmitter subscribe(Collection<UUID> deviceIds) {
+    SseEmitter emitter = new SseEmitter(timeoutMs);
+    Subscriber sub = new Subscriber(emitter, Set.copyOf(deviceIds));
+
+    // register first so nothing published from here on is missed; it is held back until
+    // the replay is queued, and events that made it into both are sent once
+    for (UUID d : sub.devices) byDevice.computeIfAbsent(d, k -> ConcurrentHashMap.newKeySet()).add(sub);
+    List<LiveEvent> replay = new ArrayList<>();
+    for (UUID d : sub.devices) {
+      Deque<LiveEvent> ring = rings.get(d);
+      if (ring != null) synchronized (ring) { replay.addAll(ring); }
+    }
+    replay.sort(Comparator.comparing(LiveEvent::ts));
+    sub.goLive(replay);
+
+    emitter.onCompletion(() -> unsubscribe(sub));
+    emitter.onTimeout(() -> unsubscribe(sub));
+    emitter.onError(e -> unsubscribe(sub));
+    sub.schedule();
+    return emitter;
+  }
+
+  @Override
+  public void onStored(SampleBatch batch) {
+    long oldest = SampleBatch.toMicros(Instant.now()) - maxAgeMicros;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != SampleBatch.STORED) continue;
+      if (batch.tsMicros(row) < oldest) continue;   // historical, not live
+      UUID device = batch.deviceId(row);
+      LiveEvent e = new LiveEvent("sample", device, SampleBatch.toInstant(batch.tsMicros(row)), toPoint(batch, row));
+      publish(e);
+    }
+  }
+
+  @EventListener
+  public void onAlert(AlertEngine.Transition t) {
+    publish(new LiveEvent("alert", t.deviceId(), t.ts(),
+        new LiveEvent.AlertData(t.to().name(), t.from().name(), t.message(), t.tvocPpb())));
+  }
+
+  private void publish(LiveEvent e) {
+    if (ringSize > 0) {
+      Deque<LiveEvent> ring = rings.computeIfAbsent(e.deviceId(), k -> new ArrayDeque<>(ringSize));
+      synchronized (ring) {
+        if (ring.size() == ringSize) ring.pollFirst();
+        ring.addLast(e);
+      }
+    }
+    Set<Subscriber> subs = byDevice.get(e.deviceId());
+    if (subs == null) return;
+    for (Subscriber s : subs) {
+      s.offer(e);
+      s.schedule();
+    }
+  }
+
+  private void unsubscribe(Subscriber sub) {
+    if (!sub.closed.compareAndSet(false, true)) return;
+    for (UUID d : sub.devices) {
+      Set<Subscriber> subs = byDevice.get(d);
+      if (subs != null) subs.remove(sub);
+    }
+  }
+
+  private void ping() {
+    Set<Subscriber> all = new HashSet<>();
+    for (Set<Subscriber> s : byDevice.values()) all.addAll(s);
+    for (Subscriber s : all) {
+      s.pingDue = true;
+      s.schedule();
+    }
+  }
+
+  private static SamplePoint toPoint(SampleBatch b, int row) {
+    return new SamplePoint(
+        SampleBatch.toInstant(b.tsMicros(row)),
+        boxed(b, row, SampleChannel.TVOC),
+        boxed(b, row, SampleChannel.VOC_INDEX),
+        boxed(b, row, SampleChannel.ECO2),
+        boxed(b, row, SampleChannel.HUMIDITY),
+        boxed(b, row, SampleChannel.TEMP),
+        boxed(b, row, SampleChannel.FORMALDEHYDE),
+        boxed(b, row, SampleChannel.BENZENE));
+  }
+
+  private static Double boxed(SampleBatch b, int row, SampleChannel ch) {
+    return b.has(row, ch) ? b.value(row, ch) : null;
+  }
+
+  @PreDestroy
+  void shutdown() {
+    heartbeat.shutdownNow();
+    senders.shutdownNow();
+  }
+
+  /** One open SSE connection with its own bounded event queue. */
+  private final class Subscriber {
+    final SseEmitter emitter;
+    final Set<UUID> devices;
+    final ArrayDeque<LiveEvent> queue = new ArrayDeque<>();
+    /** Live events that arrived during subscribe, until the replay is queued; null after. */
+    private List<LiveEvent> held = new ArrayList<>();
+    final AtomicBoolean draining = new AtomicBoolean();
+    final AtomicBoolean closed = new AtomicBoolean();
+    int dropped;
+    volatile boolean pingDue;
+
+    Subscriber(SseEmitter emitter, Set<UUID> devices) {
+      this.emitter = emitter;
+      this.devices = devices;
+    }
+
+    synchronized void offer(LiveEvent e) {
+      if (held != null) {
+        held.add(e);
+        return;
+      }
+      enqueue(e);
+    }
+
+    /** Queues the replay, minus events already held, then the held events. */
+    synchronized void goLive(List<LiveEvent> replay) {
+      Set<LiveEvent> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+      seen.addAll(held);
+      for (LiveEvent e : replay) if (!seen.contains(e)) enqueue(e);
+      for (LiveEvent e : held) enqueue(e);
+      held = null;
+    }
+
+    private void enqueue(LiveEvent e) {
+      if (queue.size() == subscriberBuffer) {
+        queue.pollFirst();
+        dropped++;
+      }
+      queue.addLast(e);
+    }
+
+    private synchronized LiveEvent poll() { return queue.pollFirst(); }
+
+    private synchronized int takeDropped() {
+      int d = dropped;
+      dropped = 0;
+      return d;
+    }
+
+    /** Makes sure exactly one sender task is draining this subscriber. */
+    void schedule() {
+      if (closed.get() || !draining.compareAndSet(false, true)) return;
+      try {
+        senders.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        draining.set(false);
+      }
+    }
+
+    private void drain() {
+      try {
+        int d = takeDropped();
+        if (d > 0) emitter.send(SseEmitter.event().name("dropped").data(Map.of("count", d)));
+        if (pingDue) {
+          pingDue = false;
+          emitter.send(SseEmitter.event().comment("ping"));
+        }
+        LiveEvent e;
+        while (!closed.get() && (e = poll()) != null) {
+          emitter.send(SseEmitter.event().name(e.type()).data(e));
+        }
+      } catch (IOException | IllegalStateException ex) {
+        log.debug("[LIVE] subscriber gone: {}", ex.toString());
+        unsubscribe(this);
+        emitter.completeWithError(ex);
+        return;
+      } finally {
+        draining.set(false);
+      }
+      // an event may have arrived after the last poll but before the flag was cleared
+      boolean pending;
+      synchronized (this) { pending = !queue.isEmpty() || dropped > 0; }
+      if (pending) schedule();
+    }
+  }
+}
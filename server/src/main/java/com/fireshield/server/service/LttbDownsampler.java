@@ -0,0 +1,114 @@
+// service/LttbDownsampler.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.api.dto.TimePoint;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming Largest-Triangle-Three-Buckets: reduces an ordered series to at most
+ * {@code maxPoints} points while keeping its visual shape (spikes survive, flat runs
+ * collapse). The window [start, end] is cut into maxPoints - 2 equal time slots; the
+ * first and last points are always kept, and from each slot the point forming the
+ * largest triangle with the previously kept point and the next slot's average is chosen.
+ * Only two slots are buffered at a time, so memory does not grow with the input.
+ * Points with a null value are dropped.
+ */
+final class LttbDownsampler implements Consumer<TimePoint> {
+
+  private final long startMs;
+  private final double slotMs;
+  private final int slots;
+  private final Consumer<TimePoint> out;
+
+  private TimePoint kept;   // last emitted point, the triangle's fixed corner
+  private TimePoint last;   // newest point seen; held back so it can be emitted as the end point
+  private final List<TimePoint> cur = new ArrayList<>();
+  private final List<TimePoint> nxt = new ArrayList<>();
+  private long curSlot, nxtSlot;
+
+  LttbDownsampler(Instant start, Instant end, int maxPoints, Consumer<TimePoint> out) {
+    this.startMs = start.toEpochMilli();
+    this.slots = Math.max(1, maxPoints - 2);
+    this.slotMs = Math.max(1.0, (double) (end.toEpochMilli() - startMs) / slots);
+    this.out = out;
+  }
+
+  @Override
+  public void accept(TimePoint p) {
+    if (p.tvoc_ppb() == null) return;
+    if (kept == null) {
+      kept = p;
+      out.accept(p);
+      return;
+    }
+    if (last != null) place(last);
+    last = p;
+  }
+
+  /** Flushes what is buffered and emits the final point. */
+  void finish() {
+    if (!cur.isEmpty()) {
+      select(cur, nxt.isEmpty() ? last : average(nxt));
+      if (!nxt.isEmpty()) select(nxt, last);
+    }
+    if (last != null) out.accept(last);
+    cur.clear();
+    nxt.clear();
+    last = null;
+  }
+
+  private void place(TimePoint p) {
+    long slot = Math.min(slots - 1, Math.max(0, (long) ((p.ts().toEpochMilli() - startMs) / slotMs)));
+    if (cur.isEmpty() || slot == curSlot) {
+      curSlot = slot;
+      cur.add(p);
+    } else if (nxt.isEmpty() || slot == nxtSlot) {
+      nxtSlot = slot;
+      nxt.add(p);
+    } else {
+      // the slot after `nxt` has started, so `nxt` is complete and `cur` can be decided
+      select(cur, average(nxt));
+      cur.clear();
+      cur.addAll(nxt);
+      curSlot = nxtSlot;
+      nxt.clear();
+      nxtSlot = slot;
+      nxt.add(p);
+    }
+  }
+
+  private void select(List<TimePoint> bucket, TimePoint c) {
+    double ax = x(kept), ay = kept.tvoc_ppb();
+    double cx = x(c), cy = c.tvoc_ppb();
+    TimePoint best = bucket.get(0);
+    double bestArea = -1;
+    for (TimePoint b : bucket) {
+      double area = Math.abs((ax - cx) * (b.tvoc_ppb() - ay) - (ax - x(b)) * (cy - ay));
+      if (area > bestArea) {
+        bestArea = area;
+        best = b;
+      }
+    }
+    kept = best;
+    out.accept(best);
+  }
+
+  private double x(TimePoint p) {
+    return p.ts().toEpochMilli() - startMs;
+  }
+
+  private static TimePoint average(List<TimePoint> bucket) {
+    long ts = 0;
+    double v = 0;
+    long base = bucket.get(0).ts().toEpochMilli();
+    for (TimePoint p : bucket) {
+      ts += p.ts().toEpochMilli() - base;
+      v += p.tvoc_ppb();
+    }
+    return new TimePoint(Instant.ofEpochMilli(base + ts / bucket.size()), v / bucket.size());
+  }
+}
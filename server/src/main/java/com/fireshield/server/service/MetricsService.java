@@ -1,11 +1,15 @@
 package com.fireshield.server.service;
 
+import com.fireshield.server.repo.SampleBatch;
 import com.fireshield.server.repo.SampleRepository;
+import com.fireshield.server.repo.SampleRollupRepository;
+import com.fireshield.server.repo.SampleSeriesRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -14,39 +18,62 @@ public class MetricsService {
 
   private static final Logger log = LoggerFactory.getLogger(MetricsService.class);
 
-  // Tunable thresholds (ppb)
-  private static final double TVOC_ELEVATED = 500.0;
-  private static final double TVOC_CRITICAL = 900.0;
+  // Tunable thresholds (ppb); also used by AlertEngine
+  static final double TVOC_ELEVATED = 500.0;
+  static final double TVOC_CRITICAL = 900.0;
 
   // Default rounding precision
   private static final int ROUND_DECIMALS = 3;
 
   private final SampleRepository samples;
+  private final SampleRollupRepository rollups;
+  private final HotSampleTier hot;
+  private final SampleSeriesRepository windows;
+  private final SampleArchiveService archive;
 
-  public MetricsService(SampleRepository samples) {
+  public MetricsService(SampleRepository samples, SampleRollupRepository rollups, HotSampleTier hot,
+                        SampleSeriesRepository windows, SampleArchiveService archive) {
     this.samples = samples;
+    this.rollups = rollups;
+    this.hot = hot;
+    this.windows = windows;
+    this.archive = archive;
   }
 
   /** Default 24h overview (used by /metrics) */
   @Transactional(readOnly = true)
-  public Map<String, Object> overview() {
-    return overviewForHours(24);
+  public Map<String, Object> overview(DeviceScope scope) {
+    return overviewForHours(24, scope);
   }
 
-  /** Simple overview for a caller-specified window (used by /insights) */
+  /**
+   * Simple overview for a caller-specified window (used by /insights), over the scope's devices.
+   * An empty scope is answered without a query.
+   */
   @Transactional(readOnly = true)
-  public Map<String, Object> overviewForHours(int windowHours) {
+  public Map<String, Object> overviewForHours(int windowHours, DeviceScope scope) {
     if (windowHours <= 0) windowHours = 24;
 
-    Object raw = samples.averagesLastHours(windowHours);
-    Object[] row = normalizeRow(raw);
-
-    log.info("[DEBUG] averagesLastHours({}): [[{}, {}, {}]]",
-        windowHours, safe(row, 0), safe(row, 1), safe(row, 2));
-
-    Double avgTvoc = round(toNumber(row, 0), ROUND_DECIMALS);
-    Double avgForm = round(toNumber(row, 1), ROUND_DECIMALS);
-    Double avgBenz = round(toNumber(row, 2), ROUND_DECIMALS);
+    Double avgTvoc, avgForm, avgBenz;
+    WindowAccumulator acc = null;
+    if (scope.isEmpty() || hot.covers(windowHours, scope.deviceIds())) acc = scanHot(windowHours, scope);
+    else if (reachesArchive(windowHours)) acc = scanTiers(windowHours, scope);
+
+    if (acc != null) {
+      avgTvoc = round(acc.tvoc.mean(), ROUND_DECIMALS);
+      avgForm = round(acc.ch2o.mean(), ROUND_DECIMALS);
+      avgBenz = round(acc.benzene.mean(), ROUND_DECIMALS);
+    } else {
+      Object raw = samples.averagesLastHours(scope.deviceIds(), windowHours);
+      Object[] row = normalizeRow(raw);
+
+      log.info("[DEBUG] averagesLastHours({}): [[{}, {}, {}]]",
+          windowHours, safe(row, 0), safe(row, 1), safe(row, 2));
+
+      avgTvoc = round(toNumber(row, 0), ROUND_DECIMALS);
+      avgForm = round(toNumber(row, 1), ROUND_DECIMALS);
+      avgBenz = round(toNumber(row, 2), ROUND_DECIMALS);
+    }
 
     String severity = classifyTvoc(avgTvoc);
 
@@ -59,40 +86,66 @@ public class MetricsService {
     return out;
   }
 
-  /** Rich metrics for awareness report (used by /insights/report) */
+  /** Rich metrics for awareness report (used by /insights/report), over the scope's devices */
   @Transactional(readOnly = true)
-  public Map<String, Object> detailedMetrics(int windowHours) {
+  public Map<String, Object> detailedMetrics(int windowHours, DeviceScope scope) {
     if (windowHours <= 0) windowHours = 24;
 
     final double ELEV = TVOC_ELEVATED;
     final double CRIT = TVOC_CRITICAL;
 
+    if (scope.isEmpty() || hot.covers(windowHours, scope.deviceIds())) {
+      WindowAccumulator acc = scanHot(windowHours, scope);
+      return detailedFrom(windowHours, acc, acc.tvocSketch);
+    }
+    if (reachesArchive(windowHours)) {
+      return detailedFrom(windowHours, scanTiers(windowHours, scope), rollupSketch(windowHours, scope));
+    }
+
     // ✅ Unwrap possible nested array (Object[][] -> Object[])
-    Object[] row = normalizeRow(samples.detailedStats(windowHours, ELEV, CRIT));
+    // One scan: slope is a least-squares fit over the window, halves come from FILTERed AVGs.
+    Object[] row = normalizeRow(samples.detailedStats(scope.deviceIds(), windowHours, ELEV, CRIT));
     long samplesCount = toLong(safe(row, 0));
 
-    // --- FIX STARTS HERE ---
-    // Crude slope from halves (also unwrap)
-    Double slope = null;
-    if (samplesCount > 1) { // Only calculate slope if there's data
-        Object[] halves = normalizeRow(samples.tvocHalves(windowHours));
-        Double avgFirst  = (halves != null && halves.length >= 1) ? toDouble(halves[0]) : null;
-        Double avgSecond = (halves != null && halves.length >= 2) ? toDouble(halves[1]) : null;
-        if (avgFirst != null && avgSecond != null) {
-            slope = round((avgSecond - avgFirst) / (windowHours / 2.0), 3); // ppb per hour
-        }
+    QuantileSketch sketch = rollupSketch(windowHours, scope);
+
+    return detailedMap(windowHours, samplesCount, safe(row, 1), safe(row, 2),
+        toNumber(row, 3), toNumber(row, 4), toNumber(row, 5), toNumber(row, 6),
+        toNumber(row, 7), toNumber(row, 8),
+        toLong(safe(row, 9)), toLong(safe(row, 10)),
+        toNumber(row, 11), toNumber(row, 12), toNumber(row, 13), sketch);
+  }
+
+  /** Percentiles from the hourly rollup sketches; the first hour is counted whole. */
+  private QuantileSketch rollupSketch(int windowHours, DeviceScope scope) {
+    QuantileSketch sketch = new QuantileSketch();
+    for (SampleRollupRepository.BucketSketch b : rollups.sketches(windowHours, "hour", scope.deviceIds())) {
+      sketch.merge(QuantileSketch.fromJson(b.sketch()));
     }
-    // --- FIX ENDS HERE ---
+    return sketch;
+  }
 
-    Double avgTvoc = round(toNumber(row, 3), 3);
-    Double minTvoc = round(toNumber(row, 4), 3);
-    Double maxTvoc = round(toNumber(row, 5), 3);
-    Double stdTvoc = round(toNumber(row, 6), 3);
-    Double avgForm = round(toNumber(row, 7), 3);
-    Double avgBenz = round(toNumber(row, 8), 3);
+  /** detailedMetrics from an accumulated window; same keys, defaults and rounding as the SQL path. */
+  private Map<String, Object> detailedFrom(int windowHours, WindowAccumulator acc, QuantileSketch sketch) {
+    Instant now = Instant.now();
+    long n = acc.rows;
+    RunningStats tvoc = acc.tvoc;
+
+    return detailedMap(windowHours, n,
+        n > 0 ? SampleBatch.toInstant(acc.minTs) : now.minusSeconds(windowHours * 3600L),
+        n > 0 ? SampleBatch.toInstant(acc.maxTs) : now,
+        orZero(tvoc.mean()), orZero(tvoc.min()), orZero(tvoc.max()), orZero(tvoc.stddev()),
+        orZero(acc.ch2o.mean()), orZero(acc.benzene.mean()),
+        tvoc.countAtLeast(WindowAccumulator.ELEVATED), tvoc.countAtLeast(WindowAccumulator.CRITICAL),
+        tvoc.slope(), tvoc.firstHalfMean(), tvoc.secondHalfMean(), sketch);
+  }
 
-    long cntElev = toLong(safe(row, 9));
-    long cntCrit = toLong(safe(row, 10));
+  private Map<String, Object> detailedMap(int windowHours, long samplesCount, Object windowStart, Object windowEnd,
+                                          Double avg, Double min, Double max, Double std,
+                                          Double ch2o, Double benzene, long cntElev, long cntCrit,
+                                          Double slope, Double avgFirst, Double avgSecond,
+                                          QuantileSketch sketch) {
+    Double avgTvoc = round(avg, 3);
 
     double fracElev = (samplesCount > 0) ? ((double) cntElev / samplesCount) : 0.0;
     double fracCrit = (samplesCount > 0) ? ((double) cntCrit / samplesCount) : 0.0;
@@ -102,27 +155,65 @@ public class MetricsService {
     Map<String, Object> out = new LinkedHashMap<>();
     out.put("windowHours", windowHours);
     out.put("samplesCount", samplesCount);
-    out.put("windowStart", safe(row, 1)); // timestamptz
-    out.put("windowEnd",   safe(row, 2)); // timestamptz
+    out.put("windowStart", windowStart); // timestamptz
+    out.put("windowEnd",   windowEnd);   // timestamptz
 
     out.put("avg_tvoc_ppb", avgTvoc);
-    out.put("min_tvoc_ppb", minTvoc);
-    out.put("max_tvoc_ppb", maxTvoc);
-    out.put("stddev_tvoc_ppb", stdTvoc);
-    out.put("avg_formaldehyde_ppm", avgForm);
-    out.put("avg_benzene_ppm", avgBenz);
+    out.put("min_tvoc_ppb", round(min, 3));
+    out.put("max_tvoc_ppb", round(max, 3));
+    out.put("stddev_tvoc_ppb", round(std, 3));
+    out.put("p50_tvoc_ppb", round(sketch.quantile(0.50), 3));   // sketch estimates, within 1%
+    out.put("p95_tvoc_ppb", round(sketch.quantile(0.95), 3));
+    out.put("p99_tvoc_ppb", round(sketch.quantile(0.99), 3));
+    out.put("avg_formaldehyde_ppm", round(ch2o, 3));
+    out.put("avg_benzene_ppm", round(benzene, 3));
 
     out.put("severity", severity);
-    out.put("tvoc_slope_ppb_per_hr", slope);
+    out.put("tvoc_slope_ppb_per_hr", round(slope, 3));
+    out.put("avg_tvoc_first_half_ppb", round(avgFirst, 3));
+    out.put("avg_tvoc_second_half_ppb", round(avgSecond, 3));
     out.put("fraction_time_elevated", round(fracElev, 3));
     out.put("fraction_time_critical", round(fracCrit, 3));
-    out.put("elevated_threshold_ppb", ELEV);
-    out.put("critical_threshold_ppb", CRIT);
+    out.put("elevated_threshold_ppb", TVOC_ELEVATED);
+    out.put("critical_threshold_ppb", TVOC_CRITICAL);
     return out;
   }
 
+  private WindowAccumulator scanHot(int windowHours, DeviceScope scope) {
+    long origin = SampleBatch.toMicros(Instant.now()) - windowHours * 3_600_000_000L;
+    return hot.scan(windowHours, scope.deviceIds(),
+        () -> new WindowAccumulator(origin, windowHours / 2.0, TVOC_ELEVATED, TVOC_CRITICAL));
+  }
+
+  private boolean reachesArchive(int windowHours) {
+    return archive.overlaps(Instant.now().minusSeconds(windowHours * 3600L));
+  }
+
+  /**
+   * A window that starts in archived days: moments of the Postgres part in one SQL scan,
+   * merged with a scan of the archive segments. Exact, like the single-tier paths.
+   */
+  private WindowAccumulator scanTiers(int windowHours, DeviceScope scope) {
+    Instant now = Instant.now();
+    Instant origin = now.minusSeconds(windowHours * 3600L);
+    long originMicros = SampleBatch.toMicros(origin);
+    double split = windowHours / 2.0;
+
+    WindowAccumulator acc = WindowAccumulator.restore(originMicros, split, TVOC_ELEVATED, TVOC_CRITICAL,
+        windows.moments(scope.deviceIds(), origin, split, WindowAccumulator.momentSpec(TVOC_ELEVATED, TVOC_CRITICAL)));
+    WindowAccumulator cold = new WindowAccumulator(originMicros, split, TVOC_ELEVATED, TVOC_CRITICAL);
+    archive.scan(scope.deviceIds(), origin, now, WindowAccumulator.CHANNELS,
+        (device, ts, v) -> cold.add(ts, v[0], v[1], v[2]));
+    return acc.merge(cold);
+  }
+
   // ---------------- helpers ----------------
 
+  /** The SQL path COALESCEs empty aggregates to 0; the hot path matches it. */
+  private static Double orZero(Double v) {
+    return v == null ? 0.0 : v;
+  }
+
   /** Unwrap possible nested array shape from native query */
   private static Object[] normalizeRow(Object raw) {
     if (raw == null) return new Object[0];
@@ -178,12 +269,6 @@ public class MetricsService {
     try { return Long.parseLong(String.valueOf(o)); } catch (Exception e) { return 0L; }
   }
 
-  private static Double toDouble(Object o) {
-    if (o == null) return null;
-    if (o instanceof Number n) return n.doubleValue();
-    try { return Double.parseDouble(String.valueOf(o)); } catch (Exception e) { return null; }
-  }
-
   private static Object safe(Object[] row, int idx) {
     return (row != null && idx >= 0 && idx < row.length) ? row[idx] : null;
   }
@@ -0,0 +1,155 @@
+// service/QuantileSketch.java
+package com.fireshield.server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * DDSketch-style quantile sketch for non-negative readings (TVOC ppb).
+ * Values fall into log-spaced bins, so any quantile comes back within 1% relative error
+ * of a real reading; bins just add up, so sketches merge exactly across buckets,
+ * devices and threads. Bins live in one dense long[] indexed from {@code minIndex};
+ * past MAX_BINS the lowest bins are folded together, trading accuracy at the bottom
+ * for bounded memory. Serialized as {"<index>": count, "z": zeroCount}, the same jsonb
+ * shape the V8 SQL functions read and write. Not thread-safe.
+ */
+public final class QuantileSketch {
+
+  static final double RELATIVE_ACCURACY = 0.01;
+  static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+  private static final double LOG_GAMMA = Math.log(GAMMA);
+  /** Readings at or below this count as zero (matches dd_index). */
+  static final double MIN_INDEXABLE = 1e-9;
+  static final int MAX_BINS = 2048;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private long[] bins = new long[0];
+  private int minIndex;
+  private long zeroCount;
+  private long total;
+
+  public void add(double v) {
+    add(v, 1);
+  }
+
+  public void add(double v, long n) {
+    if (Double.isNaN(v) || n <= 0) return;
+    total += n;
+    if (v <= MIN_INDEXABLE) {
+      zeroCount += n;
+      return;
+    }
+    addToBin((int) Math.ceil(Math.log(v) / LOG_GAMMA), n);
+  }
+
+  public QuantileSketch merge(QuantileSketch o) {
+    zeroCount += o.zeroCount;
+    total += o.total;
+    for (int i = 0; i < o.bins.length; i++) {
+      if (o.bins[i] != 0) addToBin(o.minIndex + i, o.bins[i]);
+    }
+    return this;
+  }
+
+  public long count() { return total; }
+
+  public boolean isEmpty() { return total == 0; }
+
+  /** Value at quantile q in [0, 1], or null if the sketch is empty. */
+  public Double quantile(double q) {
+    if (total == 0) return null;
+    long rank = (long) Math.floor(Math.max(0, Math.min(1, q)) * (total - 1));
+    if (rank < zeroCount) return 0.0;
+    long seen = zeroCount;
+    for (int i = 0; i < bins.length; i++) {
+      seen += bins[i];
+      if (seen > rank) return binValue(minIndex + i);
+    }
+    return binValue(minIndex + bins.length - 1);
+  }
+
+  /** Bytes held by the bins (for footprint reporting). */
+  public int sizeBytes() {
+    return bins.length * Long.BYTES;
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{");
+    if (zeroCount > 0) sb.append("\"z\":").append(zeroCount);
+    for (int i = 0; i < bins.length; i++) {
+      if (bins[i] == 0) continue;
+      if (sb.length() > 1) sb.append(',');
+      sb.append('"').append(minIndex + i).append("\":").append(bins[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  /** Parses the jsonb form; null or blank gives an empty sketch. */
+  public static QuantileSketch fromJson(String json) {
+    QuantileSketch s = new QuantileSketch();
+    if (json == null || json.isBlank()) return s;
+    try {
+      for (Map.Entry<String, JsonNode> e : MAPPER.readTree(json).properties()) {
+        long n = e.getValue().asLong();
+        if (n <= 0) continue;
+        s.total += n;
+        if (e.getKey().equals("z")) s.zeroCount += n;
+        else s.addToBin(Integer.parseInt(e.getKey()), n);
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed quantile sketch", e);
+    }
+    return s;
+  }
+
+  /** Midpoint of bin i, the estimate with the smallest worst-case relative error. */
+  private static double binValue(int i) {
+    return 2 * Math.pow(GAMMA, i) / (GAMMA + 1);
+  }
+
+  private void addToBin(int index, long n) {
+    if (bins.length == 0) {
+      bins = new long[16];
+      minIndex = index;
+    }
+    if (index < minIndex) {
+      int maxIndex = minIndex + bins.length - 1;
+      if (maxIndex - index + 1 > MAX_BINS) {
+        // would exceed the bound: fold into the lowest kept bin
+        index = Math.max(index, maxIndex - MAX_BINS + 1);
+      }
+      if (index < minIndex) {
+        int shift = minIndex - index;
+        long[] grown = new long[bins.length + shift];
+        System.arraycopy(bins, 0, grown, shift, bins.length);
+        bins = grown;
+        minIndex = index;
+      }
+    } else if (index >= minIndex + bins.length) {
+      int needed = index - minIndex + 1;
+      if (needed > MAX_BINS) {
+        raiseMinIndex(index - MAX_BINS + 1);
+        needed = MAX_BINS;
+      }
+      if (needed > bins.length) bins = Arrays.copyOf(bins, Math.min(MAX_BINS, Math.max(needed, bins.length * 2)));
+    }
+    bins[index - minIndex] += n;
+  }
+
+  /** Folds every bin below {@code newMin} into bin {@code newMin}. */
+  private void raiseMinIndex(int newMin) {
+    int keepFrom = newMin - minIndex;
+    long folded = 0;
+    for (int i = 0; i < Math.min(keepFrom, bins.length); i++) folded += bins[i];
+    long[] kept = new long[Math.max(1, bins.length - keepFrom)];
+    if (keepFrom < bins.length) System.arraycopy(bins, keepFrom, kept, 0, bins.length - keepFrom);
+    kept[0] += folded;
+    bins = kept;
+    minIndex = newMin;
+  }
+}
@@ -0,0 +1,79 @@
+// service/RecentKeySet.java
+package com.fireshield.server.service;
+
+/**
+ * Fixed-capacity set of primitive longs that forgets its oldest key when full.
+ * Open addressing with linear probing and backward-shift deletion, plus a FIFO ring
+ * for eviction order; no boxing. Not thread-safe on its own.
+ */
+final class RecentKeySet {
+
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private final long[] ring;
+  private final long[] table;
+  private final int mask;
+  private int head;
+  private int size;
+
+  RecentKeySet(int capacity) {
+    int cap = Math.max(1, capacity);
+    this.ring = new long[cap];
+    int tableSize = Integer.highestOneBit(Math.max(2, cap * 2 - 1)) << 1;
+    this.table = new long[tableSize];
+    this.mask = tableSize - 1;
+    java.util.Arrays.fill(table, EMPTY);
+  }
+
+  boolean contains(long key) {
+    for (int i = slot(key); ; i = (i + 1) & mask) {
+      long v = table[i];
+      if (v == EMPTY) return false;
+      if (v == key) return true;
+    }
+  }
+
+  /** Adds the key, evicting the oldest one if the set is full. Returns false if already present. */
+  boolean add(long key) {
+    if (key == EMPTY || contains(key)) return false;
+    if (size == ring.length) {
+      remove(ring[head]);
+      size--;
+    }
+    ring[head] = key;
+    head = (head + 1) % ring.length;
+    size++;
+    int i = slot(key);
+    while (table[i] != EMPTY) i = (i + 1) & mask;
+    table[i] = key;
+    return true;
+  }
+
+  int size() { return size; }
+
+  int capacity() { return ring.length; }
+
+  private void remove(long key) {
+    int i = slot(key);
+    while (table[i] != key) {
+      if (table[i] == EMPTY) return;
+      i = (i + 1) & mask;
+    }
+    // backward-shift the following cluster so lookups never need tombstones
+    int gap = i;
+    for (int j = (gap + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+      int home = slot(table[j]);
+      boolean movable = (gap <= j) ? (home <= gap || home > j) : (home <= gap && home > j);
+      if (movable) {
+        table[gap] = table[j];
+        gap = j;
+      }
+    }
+    table[gap] = EMPTY;
+  }
+
+  private int slot(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
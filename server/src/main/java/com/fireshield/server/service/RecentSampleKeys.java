@@ -0,0 +1,91 @@
+// service/RecentSampleKeys.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.SampleBatch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * In-memory pre-check for device retries: remembers the last N sample timestamps per
+ * device so most duplicate uploads are dropped before they reach Postgres. The unique
+ * (device_id, ts) constraint stays the real guarantee; this only saves round trips.
+ * Keys are remembered only once they are stored, so a failed write can be retried.
+ */
+@Service
+public class RecentSampleKeys {
+
+  private final BoundedCache<UUID, RecentKeySet> perDevice;
+  private final int keysPerDevice;
+  private final long idleTtlMs;
+
+  public RecentSampleKeys(
+      @Value("${app.ingest.dedupe.keys-per-device:4096}") int keysPerDevice,
+      @Value("${app.ingest.dedupe.max-devices:10000}") int maxDevices,
+      @Value("${app.ingest.dedupe.idle-ttl-seconds:3600}") long idleTtlSeconds
+  ) {
+    this.keysPerDevice = keysPerDevice;
+    this.perDevice = new BoundedCache<>(maxDevices);
+    this.idleTtlMs = idleTtlSeconds * 1000;
+  }
+
+  /**
+   * Marks PENDING rows DUPLICATE when their key was stored recently or appears earlier
+   * in the same batch. Returns the number of rows marked.
+   */
+  public int markDuplicates(SampleBatch batch) {
+    if (keysPerDevice <= 0) return 0;
+    RecentKeySet inBatch = new RecentKeySet(batch.size());
+    UUID lastDevice = null;
+    RecentKeySet seen = null;
+    int dups = 0;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != SampleBatch.PENDING) continue;
+      UUID device = batch.deviceId(row);
+      if (!device.equals(lastDevice)) {
+        lastDevice = device;
+        seen = perDevice.get(device);
+      }
+      long ts = batch.tsMicros(row);
+      boolean dup;
+      if (seen != null) {
+        synchronized (seen) { dup = seen.contains(ts); }
+      } else {
+        dup = false;
+      }
+      // batches are single-device on this path, so ts alone is the in-batch key
+      if (!dup) dup = !inBatch.add(ts);
+      if (dup) {
+        batch.status(row, SampleBatch.DUPLICATE);
+        dups++;
+      }
+    }
+    return dups;
+  }
+
+  /** Remembers the keys of rows with the given status; SampleStore passes STORED after each committed write. */
+  public void remember(SampleBatch batch, byte status) {
+    if (keysPerDevice <= 0) return;
+    UUID lastDevice = null;
+    RecentKeySet seen = null;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != status) continue;
+      UUID device = batch.deviceId(row);
+      if (!device.equals(lastDevice)) {
+        lastDevice = device;
+        seen = forDevice(device);
+      }
+      synchronized (seen) { seen.add(batch.tsMicros(row)); }
+    }
+  }
+
+  private RecentKeySet forDevice(UUID device) {
+    synchronized (perDevice) {
+      RecentKeySet set = perDevice.get(device);
+      if (set == null) set = new RecentKeySet(keysPerDevice);
+      perDevice.put(device, set, idleTtlMs);   // refresh the idle expiry on every write
+      return set;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+// service/ReportSnapshots.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.api.dto.InsightsReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Precomputed awareness reports, served stale-while-revalidate.
+ * A request for one of the configured windows gets the latest snapshot for its scope
+ * straight from memory; if that snapshot is stale (new data since, or older than
+ * max-age) a background refresh is queued and the old one is served meanwhile. A
+ * scheduler keeps recently requested scopes warm. A snapshot is never recomputed more
+ * often than min-refresh, which caps model calls per scope regardless of page views.
+ * Refreshes run on a small fixed pool; when its queue is full they are skipped and
+ * picked up by the next sweep.
+ */
+@Service
+public class ReportSnapshots {
+  private static final Logger log = LoggerFactory.getLogger(ReportSnapshots.class);
+
+  /** Sorted device ids identify a scope; see DeviceScope. */
+  private record Key(List<UUID> deviceIds, int hours) {}
+
+  private record Snapshot(InsightsReport report, long watermark, long createdAtMs) {}
+
+  /** How a request was answered; sent as the X-Report-Snapshot header. */
+  public enum Source { FRESH, STALE, MISS }
+
+  public record Served(InsightsReport report, Source source) {}
+
+  private final InsightsService insights;
+  private final IngestWatermarks watermarks;
+  private final boolean enabled;
+  private final Set<Integer> windows;
+  private final long minRefreshMs;
+  private final long maxAgeMs;
+  private final long activeMs;
+  private final int maxScopes;
+
+  private final Map<Key, Snapshot> snapshots = new ConcurrentHashMap<>();
+  /** Scopes by last request time; only these are refreshed by the sweep. */
+  private final Map<List<UUID>, ActiveScope> active = new ConcurrentHashMap<>();
+  private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+  private final SingleFlight<Key, Snapshot> misses = new SingleFlight<>();
+  private final ThreadPoolExecutor pool;
+
+  private final Counter fresh, stale, missed, refreshed, skipped;
+
+  private record ActiveScope(DeviceScope scope, long lastSeenMs) {}
+
+  public ReportSnapshots(
+      InsightsService insights,
+      IngestWatermarks watermarks,
+      MeterRegistry meters,
+      @Value("${app.insights.snapshots.enabled:true}") boolean enabled,
+      @Value("${app.insights.snapshots.windows:24,168}") List<Integer> windows,
+      @Value("${app.insights.snapshots.min-refresh-seconds:600}") long minRefreshSeconds,
+      @Value("${app.insights.snapshots.max-age-seconds:3600}") long maxAgeSeconds,
+      @Value("${app.insights.snapshots.active-hours:24}") long activeHours,
+      @Value("${app.insights.snapshots.max-scopes:1000}") int maxScopes,
+      @Value("${app.insights.snapshots.concurrency:2}") int concurrency,
+      @Value("${app.insights.snapshots.queue:100}") int queue
+  ) {
+    this.insights = insights;
+    this.watermarks = watermarks;
+    this.enabled = enabled;
+    this.windows = Set.copyOf(windows);
+    this.minRefreshMs = minRefreshSeconds * 1000;
+    this.maxAgeMs = Math.max(minRefreshSeconds, maxAgeSeconds) * 1000;
+    this.activeMs = activeHours * 3_600_000;
+    this.maxScopes = Math.max(1, maxScopes);
+
+    AtomicInteger n = new AtomicInteger();
+    int threads = Math.max(1, concurrency);
+    this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, queue)), r -> {
+          Thread t = new Thread(r, "report-refresh-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+
+    this.fresh = meters.counter("fireshield.reports.requests", "result", "fresh");
+    this.stale = meters.counter("fireshield.reports.requests", "result", "stale");
+    this.missed = meters.counter("fireshield.reports.requests", "result", "miss");
+    this.refreshed = meters.counter("fireshield.reports.refreshes", "result", "done");
+    this.skipped = meters.counter("fireshield.reports.refreshes", "result", "skipped");
+    meters.gauge("fireshield.reports.snapshots", snapshots, Map::size);
+    meters.gauge("fireshield.reports.scopes", active, Map::size);
+  }
+
+  /** True if requests for this window are answered from snapshots. */
+  public boolean handles(int hours) {
+    return enabled && windows.contains(hours);
+  }
+
+  /**
+   * The latest report for (scope, hours). Only the first request for a scope waits for a
+   * computation (shared with concurrent ones); later ones never do.
+   */
+  public Served get(DeviceScope scope, int hours) {
+    touch(scope);
+    Key key = new Key(scope.deviceIds(), hours);
+    Snapshot s = snapshots.get(key);
+    if (s == null) {
+      missed.increment();
+      s = misses.run(key, () -> compute(key, scope)).value();
+      return new Served(s.report(), Source.MISS);
+    }
+    if (needsRefresh(s, scope)) {
+      stale.increment();
+      refreshAsync(key, scope);
+      return new Served(aged(s), Source.STALE);
+    }
+    fresh.increment();
+    return new Served(aged(s), Source.FRESH);
+  }
+
+  /** Refreshes stale snapshots of recently requested scopes and forgets idle ones. */
+  @Scheduled(fixedDelayString = "${app.insights.snapshots.sweep-ms:60000}",
+             initialDelayString = "${app.insights.snapshots.sweep-ms:60000}")
+  public void sweep() {
+    if (!enabled) return;
+    long idleBefore = System.currentTimeMillis() - activeMs;
+    active.values().removeIf(a -> a.lastSeenMs() < idleBefore);
+    snapshots.keySet().removeIf(k -> !active.containsKey(k.deviceIds()));
+
+    for (ActiveScope a : active.values()) {
+      for (int hours : windows) {
+        Key key = new Key(a.scope().deviceIds(), hours);
+        Snapshot s = snapshots.get(key);
+        if (s == null || needsRefresh(s, a.scope())) refreshAsync(key, a.scope());
+      }
+    }
+  }
+
+  /** Snapshot counts and the scopes currently kept warm. */
+  public Map<String, Object> status() {
+    return Map.of(
+        "enabled", enabled,
+        "windows", windows.stream().sorted().toList(),
+        "scopes", active.size(),
+        "snapshots", snapshots.size(),
+        "refreshing", refreshing.size(),
+        "queued", pool.getQueue().size());
+  }
+
+  @PreDestroy
+  void shutdown() {
+    pool.shutdownNow();
+  }
+
+  // ---------------------------------------------------------------------------
+
+  /** Stale once new data arrived or max-age passed, but never before min-refresh. */
+  private boolean needsRefresh(Snapshot s, DeviceScope scope) {
+    long age = System.currentTimeMillis() - s.createdAtMs();
+    if (age < minRefreshMs) return false;
+    return age >= maxAgeMs || s.watermark() != watermarks.watermark(scope);
+  }
+
+  private void refreshAsync(Key key, DeviceScope scope) {
+    if (!refreshing.add(key)) return;
+    try {
+      pool.execute(() -> {
+        try {
+          compute(key, scope);
+          refreshed.increment();
+        } catch (RuntimeException e) {
+          log.warn("[REPORTS] refresh for {} devices / {}h failed: {}", key.deviceIds().size(), key.hours(), e.toString());
+        } finally {
+          refreshing.remove(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+      skipped.increment();
+    }
+  }
+
+  /** Builds and stores a snapshot; the watermark is read first so data arriving meanwhile marks it stale. */
+  private Snapshot compute(Key key, DeviceScope scope) {
+    long wm = watermarks.watermark(scope);
+    Snapshot s = new Snapshot(insights.generateAwarenessReport(key.hours(), scope), wm, System.currentTimeMillis());
+    if (active.containsKey(key.deviceIds())) snapshots.put(key, s);
+    return s;
+  }
+
+  private void touch(DeviceScope scope) {
+    long now = System.currentTimeMillis();
+    if (active.size() >= maxScopes && !active.containsKey(scope.deviceIds())) {
+      // full: make room by dropping the scope requested longest ago
+      active.entrySet().stream()
+          .min((a, b) -> Long.compare(a.getValue().lastSeenMs(), b.getValue().lastSeenMs()))
+          .ifPresent(e -> {
+            active.remove(e.getKey());
+            snapshots.keySet().removeIf(k -> k.deviceIds().equals(e.getKey()));
+          });
+    }
+    active.put(scope.deviceIds(), new ActiveScope(scope, now));
+  }
+
+  /** The snapshot's report marked as cached, aged from when the snapshot was taken. */
+  private static InsightsReport aged(Snapshot s) {
+    InsightsReport r = s.report();
+    long age = Math.max(0, (System.currentTimeMillis() - s.createdAtMs()) / 1000);
+    return new InsightsReport(r.windowHours(), r.metrics(), r.aiReport(), r.model(), r.source(), true, age);
+  }
+}
@@ -0,0 +1,150 @@
+// service/ResponseCache.java
+package com.fireshield.server.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Cache of serialized JSON responses for the read endpoints (/metrics, /series),
+ * keyed by endpoint, parameters and device scope. Model-backed /insights responses
+ * are not stored here; InsightsService has its own result cache.
+ * An entry is valid while the scope's ingest watermark is unchanged (see
+ * {@link IngestWatermarks}); max-age only bounds how long a sliding "last N hours"
+ * window may lag when no new data arrives. Bodies are stored pre-serialized, and the
+ * cache is bounded by total bytes with LRU eviction.
+ */
+@Service
+public class ResponseCache {
+
+  private record Key(String endpoint, String params, List<UUID> deviceIds) {}
+
+  private record Entry(long watermark, long createdAtMs, byte[] body) {}
+
+  private static final int ENTRY_OVERHEAD_BYTES = 128;   // key, entry and map node, roughly
+
+  private final IngestWatermarks watermarks;
+  private final ObjectMapper mapper;
+  private final boolean enabled;
+  private final long maxBytes;
+  private final long maxAgeMs;
+
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+  private long bytes;
+
+  private final Counter hits, misses, stale;
+
+  public ResponseCache(
+      IngestWatermarks watermarks,
+      ObjectMapper mapper,
+      MeterRegistry meters,
+      @Value("${app.response-cache.enabled:true}") boolean enabled,
+      @Value("${app.response-cache.max-bytes:67108864}") long maxBytes,
+      @Value("${app.response-cache.max-age-seconds:300}") long maxAgeSeconds
+  ) {
+    this.watermarks = watermarks;
+    this.mapper = mapper;
+    this.enabled = enabled;
+    this.maxBytes = Math.max(1024, maxBytes);
+    this.maxAgeMs = maxAgeSeconds * 1000;
+    this.hits = meters.counter("fireshield.cache.requests", "result", "hit");
+    this.misses = meters.counter("fireshield.cache.requests", "result", "miss");
+    this.stale = meters.counter("fireshield.cache.requests", "result", "stale");
+    meters.gauge("fireshield.cache.bytes", this, ResponseCache::bytes);
+    meters.gauge("fireshield.cache.entries", this, ResponseCache::size);
+  }
+
+  /**
+   * Returns the cached body for (endpoint, params, scope) if still valid, otherwise
+   * computes, serializes and stores it. The watermark is read before computing, so data
+   * arriving meanwhile makes the new entry stale rather than wrongly fresh.
+   */
+  public ResponseEntity<byte[]> json(String endpoint, String params, DeviceScope scope, Supplier<?> compute) {
+    if (!enabled) return ok(serialize(compute.get()), "BYPASS");
+
+    Key key = new Key(endpoint, params, scope.deviceIds());
+    long wm = watermarks.watermark(scope);
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      Entry e = entries.get(key);
+      if (e != null) {
+        if (e.watermark() == wm && now - e.createdAtMs() < maxAgeMs) {
+          hits.increment();
+          return ok(e.body(), "HIT");
+        }
+        remove(key);
+        stale.increment();
+      } else {
+        misses.increment();
+      }
+    }
+
+    byte[] body = serialize(compute.get());
+    synchronized (this) {
+      remove(key);
+      long weight = weight(key, body);
+      if (weight <= maxBytes / 4) {   // one huge response must not flush everything else
+        entries.put(key, new Entry(wm, now, body));
+        bytes += weight;
+        var it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+          var eldest = it.next();
+          bytes -= weight(eldest.getKey(), eldest.getValue().body());
+          it.remove();
+        }
+      }
+    }
+    return ok(body, "MISS");
+  }
+
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  private void remove(Key key) {
+    Entry old = entries.remove(key);
+    if (old != null) bytes -= weight(key, old.body());
+  }
+
+  private static long weight(Key key, byte[] body) {
+    return body.length + key.endpoint().length() + key.params().length()
+        + 16L * key.deviceIds().size() + ENTRY_OVERHEAD_BYTES;
+  }
+
+  private byte[] serialize(Object value) {
+    try {
+      return mapper.writeValueAsBytes(value);
+    } catch (JsonProcessingException e) {
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not serialize response");
+    }
+  }
+
+  private static ResponseEntity<byte[]> ok(byte[] body, String cacheStatus) {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .header("X-Cache", cacheStatus)
+        .body(body);
+  }
+}
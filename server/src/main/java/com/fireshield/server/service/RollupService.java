@@ -0,0 +1,108 @@
+// service/RollupService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SampleRollupRepository;
+import com.fireshield.server.repo.SampleRollupRepository.Delta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Keeps sample_rollups in step with ingest: every stored batch is folded into
+ * minute/hour/day deltas in memory (including a {@link QuantileSketch} per bucket) and
+ * upserted in one JDBC batch. Rows that land in old buckets (backfills, late uploads)
+ * are simply added to those buckets.
+ * {@link #rebuild} recomputes a range from raw samples if the two ever drift.
+ */
+@Service
+@Order(IngestListener.ORDER_DATA)
+public class RollupService implements IngestListener {
+
+  private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+  /** Bucket names as stored in sample_rollups.bucket, with their width in microseconds. */
+  static final String[] BUCKETS = {"minute", "hour", "day"};
+  static final long[] BUCKET_MICROS = {60_000_000L, 3_600_000_000L, 86_400_000_000L};
+
+  private record Key(int bucket, UUID deviceId, long startMicros) {}
+
+  private static final Comparator<Key> KEY_ORDER = Comparator
+      .comparingInt(Key::bucket)
+      .thenComparing(Key::deviceId)
+      .thenComparingLong(Key::startMicros);
+
+  private static final class Acc {
+    long cnt;
+    double sum, sumsq;
+    double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+    final QuantileSketch sketch = new QuantileSketch();
+  }
+
+  private final SampleRollupRepository rollups;
+  private final SamplePartitionService partitions;
+  private final IngestWatermarks watermarks;
+
+  public RollupService(SampleRollupRepository rollups, SamplePartitionService partitions,
+                       IngestWatermarks watermarks) {
+    this.rollups = rollups;
+    this.partitions = partitions;
+    this.watermarks = watermarks;
+  }
+
+  @Override
+  public void onStored(SampleBatch batch) {
+    // sorted so concurrent writers upsert overlapping buckets in the same lock order
+    Map<Key, Acc> accs = new TreeMap<>(KEY_ORDER);
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != SampleBatch.STORED || !batch.has(row, SampleChannel.TVOC)) continue;
+      double v = batch.value(row, SampleChannel.TVOC);
+      long ts = batch.tsMicros(row);
+      for (int b = 0; b < BUCKETS.length; b++) {
+        long start = Math.floorDiv(ts, BUCKET_MICROS[b]) * BUCKET_MICROS[b];
+        Acc a = accs.computeIfAbsent(new Key(b, batch.deviceId(row), start), k -> new Acc());
+        a.cnt++;
+        a.sum += v;
+        a.sumsq += v * v;
+        if (v < a.min) a.min = v;
+        if (v > a.max) a.max = v;
+        a.sketch.add(v);
+      }
+    }
+    if (accs.isEmpty()) return;
+
+    List<Delta> deltas = new ArrayList<>(accs.size());
+    accs.forEach((k, a) -> deltas.add(new Delta(BUCKETS[k.bucket()], k.deviceId(),
+        SampleBatch.toInstant(k.startMicros()), a.cnt, a.sum, a.min, a.max, a.sumsq, a.sketch.toJson())));
+    rollups.add(deltas);
+  }
+
+  /**
+   * Recomputes rollups for [from, to) (whole UTC days) from raw samples; all devices if deviceId is null.
+   * Clamped to the writable horizon so rollups outlive the partitions they were built from
+   * (expired or archived).
+   */
+  @Transactional
+  public int rebuild(Instant from, Instant to, UUID deviceId) {
+    Instant horizon = partitions.writableHorizon();
+    if (horizon != null && from.isBefore(horizon)) from = horizon;
+    if (!from.isBefore(to)) return 0;
+    long started = System.nanoTime();
+    int rows = rollups.rebuild(from, to, deviceId);
+    watermarks.bumpAll();   // cached /series responses may predate the rebuilt buckets
+    log.info("[ROLLUPS] rebuilt {} rollup rows for {}..{} (device {}) in {} ms",
+        rows, from, to, deviceId == null ? "all" : deviceId, (System.nanoTime() - started) / 1_000_000);
+    return rows;
+  }
+}
@@ -0,0 +1,120 @@
+// service/RunningStats.java
+package com.fireshield.server.service;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass, mergeable statistics over (x, y) readings, where x is time (e.g. hours
+ * from the window start) and y the value: count, mean, min, max, Welford variance,
+ * counts at or above thresholds, least-squares slope of y over x, and the means of the
+ * readings before/after a split point. Two accumulators built with the same thresholds
+ * and split merge exactly (Chan et al.), so partial results can be computed per bucket,
+ * device or thread and combined. Not thread-safe; merge instead of sharing.
+ */
+public final class RunningStats {
+
+  private final double[] thresholds;
+  private final double split;
+
+  private long n;
+  private double mean, m2;
+  private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+  private double meanX, m2x, cxy;   // co-moments for the regression
+  private final long[] atLeast;
+  private long firstN, secondN;
+  private double firstSum, secondSum;
+
+  /**
+   * @param split      readings with x below it count toward the first half
+   * @param thresholds values to count readings at or above
+   */
+  public RunningStats(double split, double... thresholds) {
+    this.split = split;
+    this.thresholds = thresholds.clone();
+    this.atLeast = new long[thresholds.length];
+  }
+
+  /**
+   * Rebuilds an accumulator from aggregates computed elsewhere (e.g. SQL REGR_* over the
+   * same x), so it can be merged with in-memory ones. m2, m2x and cxy are the centered
+   * sums of squares/products (REGR_SYY, REGR_SXX, REGR_SXY).
+   */
+  static RunningStats restore(double split, double[] thresholds, long n, double mean, double m2,
+                              double min, double max, double meanX, double m2x, double cxy, long[] atLeast,
+                              long firstN, double firstSum, long secondN, double secondSum) {
+    RunningStats s = new RunningStats(split, thresholds);
+    if (n == 0) return s;
+    s.n = n; s.mean = mean; s.m2 = m2; s.min = min; s.max = max;
+    s.meanX = meanX; s.m2x = m2x; s.cxy = cxy;
+    System.arraycopy(atLeast, 0, s.atLeast, 0, s.atLeast.length);
+    s.firstN = firstN; s.firstSum = firstSum;
+    s.secondN = secondN; s.secondSum = secondSum;
+    return s;
+  }
+
+  public void add(double x, double y) {
+    n++;
+    double dx = x - meanX;
+    double dy = y - mean;
+    meanX += dx / n;
+    mean += dy / n;
+    m2x += dx * (x - meanX);
+    m2 += dy * (y - mean);
+    cxy += dx * (y - mean);
+    if (y < min) min = y;
+    if (y > max) max = y;
+    for (int i = 0; i < thresholds.length; i++) if (y >= thresholds[i]) atLeast[i]++;
+    if (x < split) { firstN++; firstSum += y; } else { secondN++; secondSum += y; }
+  }
+
+  /** Folds {@code o} into this accumulator; both must share thresholds and split. */
+  public RunningStats merge(RunningStats o) {
+    if (o.split != split || !Arrays.equals(o.thresholds, thresholds)) {
+      throw new IllegalArgumentException("RunningStats with different thresholds/split can't be merged");
+    }
+    if (o.n == 0) return this;
+    if (n == 0) {
+      n = o.n; mean = o.mean; m2 = o.m2; meanX = o.meanX; m2x = o.m2x; cxy = o.cxy;
+    } else {
+      long total = n + o.n;
+      double dX = o.meanX - meanX;
+      double dY = o.mean - mean;
+      double w = (double) n * o.n / total;
+      m2x += o.m2x + dX * dX * w;
+      m2 += o.m2 + dY * dY * w;
+      cxy += o.cxy + dX * dY * w;
+      meanX += dX * o.n / total;
+      mean += dY * o.n / total;
+      n = total;
+    }
+    min = Math.min(min, o.min);
+    max = Math.max(max, o.max);
+    for (int i = 0; i < atLeast.length; i++) atLeast[i] += o.atLeast[i];
+    firstN += o.firstN; firstSum += o.firstSum;
+    secondN += o.secondN; secondSum += o.secondSum;
+    return this;
+  }
+
+  public long count() { return n; }
+
+  public Double mean() { return n == 0 ? null : mean; }
+  public Double min()  { return n == 0 ? null : min; }
+  public Double max()  { return n == 0 ? null : max; }
+
+  /** Sample variance, like VAR_SAMP (null below two readings). */
+  public Double variance() { return n < 2 ? null : m2 / (n - 1); }
+
+  public Double stddev() {
+    Double v = variance();
+    return v == null ? null : Math.sqrt(v);
+  }
+
+  /** Least-squares slope of y over x, like REGR_SLOPE (null if x never varies). */
+  public Double slope() { return (n < 2 || m2x == 0) ? null : cxy / m2x; }
+
+  /** Readings at or above {@code thresholds[i]}. */
+  public long countAtLeast(int i) { return atLeast[i]; }
+
+  public Double firstHalfMean()  { return firstN == 0 ? null : firstSum / firstN; }
+  public Double secondHalfMean() { return secondN == 0 ? null : secondSum / secondN; }
+}
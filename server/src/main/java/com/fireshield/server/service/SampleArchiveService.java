@@ -0,0 +1,324 @@
+// service/SampleArchiveService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SamplePartitionRepository;
+import com.fireshield.server.repo.SamplePartitionRepository.Partition;
+import com.fireshield.server.repo.SampleSegmentRepository;
+import com.fireshield.server.repo.SampleSegmentRepository.Segment;
+import com.fireshield.server.repo.SampleBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cold tier for samples. Once a day is older than after-days (and so no longer takes
+ * rows, see SamplePartitionService.prepare), its partition is copied into one
+ * compressed columnar segment per device (SegmentCodec) under app.archive.dir,
+ * cataloged in sample_segments, and dropped. Reads memory-map the segments.
+ *
+ * A day's segments are only read once its partition is gone (state ACTIVE), so a row is
+ * never counted twice; a run cut off between writing and dropping is finished by the
+ * next one. Rollups are left alone, so /series charts keep their history; metrics and
+ * /series/multi windows reaching past the horizon merge in {@link #scan}.
+ */
+@Service
+public class SampleArchiveService {
+
+  private static final Logger log = LoggerFactory.getLogger(SampleArchiveService.class);
+  private static final long MAPPING_TTL_MS = 3_600_000;
+
+  /** Cells of a cold scan; {@code values[i]} is {@code channels[i]} of the scan, NaN if missing. */
+  @FunctionalInterface
+  public interface ColdRowSink {
+    void row(UUID deviceId, long tsMicros, double[] values);
+  }
+
+  private final SampleSegmentRepository segments;
+  private final SamplePartitionRepository partitions;
+  private final SamplePartitionService partitionService;
+  private final IngestWatermarks watermarks;
+  private final TransactionTemplate readTx;
+  private final TransactionTemplate tx;
+  private final boolean enabled;
+  private final int retentionDays;
+  private final Path dir;
+  private final BoundedCache<String, ByteBuffer> mapped;
+
+  /** First day not in the archive (exclusive bound of the cold tier), or null if it is empty. */
+  private volatile LocalDate coldUntil;
+
+  public SampleArchiveService(
+      SampleSegmentRepository segments,
+      SamplePartitionRepository partitions,
+      SamplePartitionService partitionService,
+      IngestWatermarks watermarks,
+      PlatformTransactionManager txManager,
+      @Value("${app.archive.enabled:false}") boolean enabled,
+      @Value("${app.samples.retention-days:0}") int retentionDays,
+      @Value("${app.archive.dir:./data/archive}") String dir,
+      @Value("${app.archive.mapped-segments:512}") int mappedSegments
+  ) {
+    this.segments = segments;
+    this.partitions = partitions;
+    this.partitionService = partitionService;
+    this.watermarks = watermarks;
+    this.readTx = new TransactionTemplate(txManager);
+    this.readTx.setReadOnly(true);
+    this.tx = new TransactionTemplate(txManager);
+    this.enabled = enabled;
+    this.retentionDays = retentionDays;
+    this.dir = Paths.get(dir).toAbsolutePath();
+    this.mapped = new BoundedCache<>(mappedSegments);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onStartup() {
+    try {
+      refreshHorizon();
+      if (coldUntil != null) log.info("[ARCHIVE] cold tier holds days before {}", coldUntil);
+    } catch (DataAccessException e) {
+      log.warn("[ARCHIVE] could not read the segment catalog: {}", e.getMessage());
+    }
+  }
+
+  /** True if [from, now) reaches into archived days, i.e. reads must include {@link #scan}. */
+  public boolean overlaps(Instant from) {
+    LocalDate c = coldUntil;
+    return c != null && from.isBefore(c.atStartOfDay(ZoneOffset.UTC).toInstant());
+  }
+
+  /**
+   * Feeds archived rows of the given devices with ts in [from, to) to {@code sink},
+   * device-day by device-day, decoding only the requested channels.
+   */
+  public void scan(Collection<UUID> deviceIds, Instant from, Instant to, SampleChannel[] channels, ColdRowSink sink) {
+    if (deviceIds.isEmpty() || !overlaps(from)) return;
+    long fromMicros = SampleBatch.toMicros(from), toMicros = SampleBatch.toMicros(to);
+    double[] values = new double[channels.length];
+    for (Segment seg : segments.find(deviceIds, from, to)) {
+      ByteBuffer buf = map(seg.path());
+      long[] ts = SegmentCodec.timestamps(buf);
+      double[][] cols = new double[channels.length][];
+      for (int c = 0; c < channels.length; c++) cols[c] = SegmentCodec.channel(buf, channels[c]);
+      int i = lowerBound(ts, fromMicros);
+      for (; i < ts.length && ts[i] < toMicros; i++) {
+        for (int c = 0; c < channels.length; c++) values[c] = cols[c][i];
+        sink.row(seg.deviceId(), ts[i], values);
+      }
+    }
+  }
+
+  /** Nightly: finish interrupted runs, archive every day past the writable horizon, expire old segments. */
+  @Scheduled(cron = "${app.archive.cron:0 20 3 * * *}", zone = "UTC")
+  public synchronized void run() {
+    if (!enabled) return;
+    Instant horizon = partitionService.writableHorizon();
+    if (horizon == null) return;
+    LocalDate firstHot = LocalDate.ofInstant(horizon, ZoneOffset.UTC);
+
+    recover();
+    for (Partition p : partitions.list()) {
+      if (!p.day().isBefore(firstHot)) continue;
+      try {
+        archive(p);
+      } catch (RuntimeException e) {
+        log.warn("[ARCHIVE] {} not archived, will retry: {}", p.name(), e.toString());
+      }
+    }
+    expire();
+    refreshHorizon();
+  }
+
+  /** Segment counts and the compression achieved. */
+  public Map<String, Object> status() {
+    long[] t = segments.totals();
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("enabled", enabled);
+    out.put("dir", dir.toString());
+    out.put("coldUntil", coldUntil);
+    out.put("segments", t[0]);
+    out.put("rows", t[1]);
+    out.put("bytes", t[2]);
+    out.put("bytesPerRow", t[1] == 0 ? null : Math.round(100.0 * t[2] / t[1]) / 100.0);
+    out.put("mappedSegments", mapped.size());
+    return out;
+  }
+
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Copies one partition into per-device segments, then drops it and activates them in
+   * one transaction, so readers see the day either in the partition or in the archive.
+   */
+  private void archive(Partition p) {
+    LocalDate day = p.day();
+    long started = System.nanoTime();
+    DaySplitter split = new DaySplitter(day);
+    readTx.executeWithoutResult(status -> segments.streamDay(day, split));
+    split.flush();
+    List<Segment> written = split.written;
+
+    written.forEach(segments::insert);
+    tx.executeWithoutResult(status -> {
+      partitions.dropInTransaction(p);
+      segments.activate(day);
+    });
+    coldChanged();   // the day is cold from now on; reads must not wait for the whole run
+
+    long rows = written.stream().mapToLong(Segment::rows).sum();
+    long bytes = written.stream().mapToLong(Segment::bytes).sum();
+    log.info("[ARCHIVE] {}: {} rows from {} devices into {} KiB ({} bytes/row) in {} ms",
+        p.name(), rows, written.size(), bytes / 1024,
+        rows == 0 ? 0 : Math.round(10.0 * bytes / rows) / 10.0, (System.nanoTime() - started) / 1_000_000);
+  }
+
+  /** Cuts a day's rows, ordered by device, into one segment per device. */
+  private final class DaySplitter implements SampleSegmentRepository.RowSink {
+    final LocalDate day;
+    final List<Segment> written = new ArrayList<>();
+    private UUID device;
+    private SegmentCodec.Encoder enc;
+
+    DaySplitter(LocalDate day) {
+      this.day = day;
+    }
+
+    @Override
+    public void row(UUID deviceId, long tsMicros, double[] values) {
+      if (!deviceId.equals(device)) {
+        flush();
+        device = deviceId;
+        enc = new SegmentCodec.Encoder();
+      }
+      enc.add(tsMicros, values);
+    }
+
+    void flush() {
+      if (device != null) written.add(write(day, device, enc));
+      device = null;
+    }
+  }
+
+  private Segment write(LocalDate day, UUID deviceId, SegmentCodec.Encoder enc) {
+    byte[] data = enc.finish();
+    SegmentCodec.Header h = SegmentCodec.header(ByteBuffer.wrap(data));
+    String rel = "%04d/%02d/%02d/%s.fseg".formatted(day.getYear(), day.getMonthValue(), day.getDayOfMonth(), deviceId);
+    Path target = dir.resolve(rel);
+    Path tmp = target.resolveSibling(target.getFileName() + ".part");
+    try {
+      Files.createDirectories(target.getParent());
+      try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer b = ByteBuffer.wrap(data);
+        while (b.hasRemaining()) ch.write(b);
+        ch.force(true);   // on disk before the partition holding the only other copy is dropped
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException("writing " + target, e);
+    }
+    mapped.remove(rel);
+    return new Segment(day, deviceId, rel, h.rows(),
+        SampleBatch.toInstant(h.minTs()), SampleBatch.toInstant(h.maxTs()), data.length, "WRITTEN");
+  }
+
+  /**
+   * Days left WRITTEN by an interrupted run: if the partition is gone the segments are the
+   * data and become readable; otherwise they are discarded and the day is archived again.
+   */
+  private void recover() {
+    List<LocalDate> attached = partitions.list().stream().map(Partition::day).toList();
+    for (LocalDate day : segments.writtenDays()) {
+      if (attached.contains(day)) {
+        segments.forDay(day).forEach(s -> delete(s.path()));
+        segments.deleteDay(day);
+      } else {
+        segments.activate(day);
+        coldChanged();
+        log.info("[ARCHIVE] activated segments of {} left by an interrupted run", day);
+      }
+    }
+  }
+
+  /** Deletes segments of days past retention. */
+  private void expire() {
+    if (retentionDays <= 0) return;
+    LocalDate oldest = LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays - 1L);
+    for (LocalDate day : segments.activeDaysBefore(oldest)) {
+      segments.forDay(day).forEach(s -> delete(s.path()));
+      segments.deleteDay(day);
+      log.info("[ARCHIVE] expired segments of {} (retention {} days)", day, retentionDays);
+    }
+  }
+
+  /** Moves the cold horizon, then drops cached reads that were computed before it moved. */
+  private void coldChanged() {
+    refreshHorizon();
+    watermarks.bumpAll();
+  }
+
+  private void refreshHorizon() {
+    LocalDate last = segments.lastActiveDay();
+    coldUntil = (last == null) ? null : last.plusDays(1);
+  }
+
+  /**
+   * Read-only mapping of a segment, kept for reuse; the OS pages it in on demand. Only
+   * absolute reads are used, so one mapping can be shared by concurrent scans.
+   */
+  private ByteBuffer map(String rel) {
+    ByteBuffer b = mapped.get(rel);
+    if (b != null) return b;
+    try (FileChannel ch = FileChannel.open(dir.resolve(rel), StandardOpenOption.READ)) {
+      b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException("mapping segment " + rel, e);
+    }
+    mapped.put(rel, b, MAPPING_TTL_MS);
+    return b;
+  }
+
+  private void delete(String rel) {
+    mapped.remove(rel);
+    try {
+      Files.deleteIfExists(dir.resolve(rel));
+    } catch (IOException e) {
+      log.warn("[ARCHIVE] could not delete {}: {}", rel, e.getMessage());
+    }
+  }
+
+  private static int lowerBound(long[] ts, long key) {
+    int i = Arrays.binarySearch(ts, key);
+    if (i < 0) return -i - 1;
+    while (i > 0 && ts[i - 1] == key) i--;
+    return i;
+  }
+}
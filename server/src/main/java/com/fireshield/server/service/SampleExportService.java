@@ -0,0 +1,189 @@
+// service/SampleExportService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SampleExportRepository;
+import com.fireshield.server.repo.SampleSegmentRepository.RowSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams raw samples to an output stream as CSV or NDJSON, device by device in ts order.
+ * Archived days come from the segment files (see SampleArchiveService); the rest is
+ * read in keyset chunks of chunk-rows, each its own short read-only transaction with a
+ * fixed fetch size. A chunk is buffered in primitive arrays (64 bytes per row) and only
+ * written out after its transaction has ended, so a slow client never holds a pooled
+ * connection or snapshot, and memory stays bounded however many rows go out.
+ * NDJSON lines use the SamplePoint field names, so an export can be replayed through
+ * POST /samples/stream.
+ */
+@Service
+public class SampleExportService {
+
+  private static final Logger log = LoggerFactory.getLogger(SampleExportService.class);
+
+  public enum Format { CSV, NDJSON }
+
+  private final SampleExportRepository rows;
+  private final SampleArchiveService archive;
+  private final TransactionTemplate readTx;
+  private final int chunkRows;
+  private final int fetchSize;
+
+  public SampleExportService(
+      SampleExportRepository rows,
+      SampleArchiveService archive,
+      PlatformTransactionManager txManager,
+      @Value("${app.export.chunk-rows:10000}") int chunkRows,
+      @Value("${app.export.fetch-size:2000}") int fetchSize
+  ) {
+    this.rows = rows;
+    this.archive = archive;
+    this.readTx = new TransactionTemplate(txManager);
+    this.readTx.setReadOnly(true);
+    this.chunkRows = Math.max(1, chunkRows);
+    this.fetchSize = Math.max(1, fetchSize);
+  }
+
+  /** Writes every sample of the scope's devices with ts in [from, to); returns the row count. */
+  public long export(DeviceScope scope, Instant from, Instant to, Format format, boolean gzip, OutputStream out)
+      throws IOException {
+    long started = System.nanoTime();
+    OutputStream sink = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+    Writer w = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8), 64 * 1024);
+    RowWriter writer = new RowWriter(w, format);
+    ChunkBuffer chunk = new ChunkBuffer(chunkRows);
+    long fromMicros = SampleBatch.toMicros(from), toMicros = SampleBatch.toMicros(to);
+
+    try {
+      writer.header();
+      for (UUID device : scope.deviceIds()) {
+        archive.scan(List.of(device), from, to, SampleChannel.all(), writer::row);
+        long cursor = fromMicros - 1;
+        while (true) {
+          long after = cursor;
+          chunk.clear();
+          int n = readTx.execute(status -> rows.chunk(device, after, toMicros, chunkRows, fetchSize, chunk));
+          chunk.drainTo(writer);   // transaction is over; the client can take its time
+          if (n < chunkRows) break;
+          cursor = writer.lastTs;
+        }
+      }
+      w.flush();
+      if (sink instanceof GZIPOutputStream gz) gz.finish();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();   // usually the client went away; nothing more to send
+    }
+
+    double secs = (System.nanoTime() - started) / 1e9;
+    log.info("[EXPORT] {} rows for {} devices ({} {}) in {} s ({} rows/s)",
+        writer.count, scope.deviceIds().size(), format, gzip ? "gzip" : "plain",
+        Math.round(secs * 10) / 10.0, Math.round(writer.count / Math.max(secs, 1e-9)));
+    return writer.count;
+  }
+
+  /** One chunk of rows in column arrays, reused for every chunk of an export. */
+  private static final class ChunkBuffer implements RowSink {
+    private final long[] ts;
+    private final double[][] values;
+    private UUID device;
+    private int size;
+
+    ChunkBuffer(int capacity) {
+      this.ts = new long[capacity];
+      this.values = new double[capacity][SampleChannel.count()];
+    }
+
+    @Override
+    public void row(UUID deviceId, long tsMicros, double[] v) {
+      device = deviceId;   // a chunk is always one device
+      ts[size] = tsMicros;
+      System.arraycopy(v, 0, values[size], 0, v.length);
+      size++;
+    }
+
+    void drainTo(RowSink sink) {
+      for (int i = 0; i < size; i++) sink.row(device, ts[i], values[i]);
+      size = 0;
+    }
+
+    void clear() {
+      size = 0;
+    }
+  }
+
+  /** Formats rows straight into the writer; no per-row objects beyond the value array. */
+  private static final class RowWriter implements RowSink {
+    private final Writer w;
+    private final Format format;
+    private final SampleChannel[] channels = SampleChannel.all();
+    long count;
+    long lastTs;
+
+    RowWriter(Writer w, Format format) {
+      this.w = w;
+      this.format = format;
+    }
+
+    void header() throws IOException {
+      if (format != Format.CSV) return;
+      w.write("device_id,ts");
+      for (SampleChannel c : channels) {
+        w.write(',');
+        w.write(c.column());
+      }
+      w.write('\n');
+    }
+
+    @Override
+    public void row(UUID deviceId, long tsMicros, double[] values) {
+      try {
+        String ts = SampleBatch.toInstant(tsMicros).toString();
+        if (format == Format.CSV) {
+          w.write(deviceId.toString());
+          w.write(',');
+          w.write(ts);
+          for (double v : values) {
+            w.write(',');
+            if (!Double.isNaN(v)) w.write(Double.toString(v));
+          }
+        } else {
+          w.write("{\"device_id\":\"");
+          w.write(deviceId.toString());
+          w.write("\",\"ts\":\"");
+          w.write(ts);
+          w.write('"');
+          for (int c = 0; c < channels.length; c++) {
+            w.write(",\"");
+            w.write(channels[c].column());
+            w.write("\":");
+            w.write(Double.isNaN(values[c]) ? "null" : Double.toString(values[c]));
+          }
+          w.write('}');
+        }
+        w.write('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      count++;
+      lastTs = tsMicros;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+// service/SampleFrameReader.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+/**
+ * Streaming decoder for the compact binary upload format ({@value #CONTENT_TYPE}).
+ * All integers are big-endian.
+ * <pre>
+ * header:  u16 magic 0x4653 ("FS") | u8 version (1) | 16 bytes device UUID (msb, lsb)
+ *          | i64 base timestamp (epoch ms) | u16 sample count
+ * sample:  zigzag varint delta ms from the previous sample (first: from base)
+ *          | u8 presence bitmap (bit i = SampleChannel ordinal i)
+ *          | f32 per present channel, in channel order
+ * </pre>
+ * Samples are decoded straight into {@link SampleBatch} columns; no per-sample objects.
+ * A sample is only appended once all its bytes have been read. Samples with a
+ * non-finite value or a negative TVOC are appended as FAILED; layout errors (unknown
+ * channel bits, timestamps out of range, bytes after the last sample) raise
+ * {@link MalformedFrameException}.
+ */
+public final class SampleFrameReader {
+
+  public static final String CONTENT_TYPE = "application/x-fireshield-frame";
+
+  static final int MAGIC = 0x4653;
+  static final int VERSION = 1;
+
+  private final DataInputStream in;
+  private final UUID deviceId;
+  private final int count;
+  private final double[] values = new double[SampleChannel.count()];
+  private long lastTsMs;
+  private int read;
+
+  private SampleFrameReader(DataInputStream in, UUID deviceId, long baseTsMs, int count) {
+    this.in = in;
+    this.deviceId = deviceId;
+    this.lastTsMs = baseTsMs;
+    this.count = count;
+  }
+
+  /** Reads and checks the frame header. */
+  public static SampleFrameReader open(InputStream raw) throws IOException {
+    DataInputStream in = new DataInputStream(raw);
+    int magic = in.readUnsignedShort();
+    if (magic != MAGIC) throw new MalformedFrameException("bad magic 0x" + Integer.toHexString(magic));
+    int version = in.readUnsignedByte();
+    if (version != VERSION) throw new MalformedFrameException("unsupported frame version " + version);
+    UUID deviceId = new UUID(in.readLong(), in.readLong());
+    long baseTsMs = in.readLong();
+    int count = in.readUnsignedShort();
+    return new SampleFrameReader(in, deviceId, baseTsMs, count);
+  }
+
+  public UUID deviceId() { return deviceId; }
+  public int count() { return count; }
+  public int remaining() { return count - read; }
+
+  /**
+   * Decodes samples until the batch is full or the frame is exhausted.
+   * Returns the number of rows appended.
+   */
+  public int readInto(SampleBatch batch) throws IOException {
+    SampleChannel[] channels = SampleChannel.all();
+    int n = 0;
+    while (read < count && !batch.isFull()) {
+      // decode the whole sample before appending, so a frame cut off mid-sample leaves no half row
+      long delta = readZigZagVarLong();
+      int mask = in.readUnsignedByte();
+      if ((mask >>> channels.length) != 0) {
+        throw new MalformedFrameException("unknown channel bits 0x" + Integer.toHexString(mask) + " in sample " + read);
+      }
+      boolean valid = true;
+      for (SampleChannel ch : channels) {
+        if ((mask & (1 << ch.ordinal())) == 0) continue;
+        double v = in.readFloat();
+        if (!Double.isFinite(v) || (ch == SampleChannel.TVOC && v < 0)) valid = false;
+        values[ch.ordinal()] = v;
+      }
+      long tsMs;
+      long tsMicros;
+      try {
+        tsMs = Math.addExact(lastTsMs, delta);
+        tsMicros = Math.multiplyExact(tsMs, 1_000L);
+      } catch (ArithmeticException e) {
+        throw new MalformedFrameException("timestamp out of range in sample " + read);
+      }
+      lastTsMs = tsMs;
+      int row = batch.append(deviceId, tsMicros);
+      for (SampleChannel ch : channels) {
+        if ((mask & (1 << ch.ordinal())) != 0) batch.put(row, ch, values[ch.ordinal()]);
+      }
+      if (!valid) batch.status(row, SampleBatch.FAILED);
+      read++;
+      n++;
+    }
+    if (read == count && in.read() >= 0) {
+      throw new MalformedFrameException("unexpected bytes after " + count + " samples");
+    }
+    return n;
+  }
+
+  private long readZigZagVarLong() throws IOException {
+    long v = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) throw new EOFException("truncated varint");
+      v |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return (v >>> 1) ^ -(v & 1);
+    }
+    throw new MalformedFrameException("varint too long");
+  }
+
+  /** Raised for frames that don't follow the layout above. */
+  public static class MalformedFrameException extends IOException {
+    public MalformedFrameException(String message) { super(message); }
+  }
+}
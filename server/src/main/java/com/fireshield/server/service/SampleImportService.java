@@ -0,0 +1,426 @@
+// service/SampleImportService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.api.dto.ImportResponse;
+import com.fireshield.server.api.dto.ImportResponse.FileResult;
+import com.fireshield.server.domain.Device;
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.DeviceRepository;
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SampleImportRepository;
+import com.fireshield.server.repo.SampleImportRepository.Loaded;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk import of historical CSV logs (POST /admin/import/samples).
+ * Files are loaded in parallel, one per worker, each streamed through COPY into a
+ * staging table and merged in one statement (see SampleImportRepository); lines are
+ * validated as COPY pulls them, so a bad line rejects only itself and nothing is
+ * buffered beyond a few KB per file (plus the rows inside the hot-tier window). Device keys are looked up once per import.
+ * Rollups for the imported ranges are rebuilt once at the end, not per row.
+ *
+ * <p>CSV layout: a header naming {@code ts} and any channel columns (as in the samples
+ * table), plus {@code device_key} or {@code device_id} unless the request names one
+ * device for all files. {@code ts} is ISO-8601 or epoch seconds; empty cells are missing.
+ *
+ * <p>Only days that still take rows can be imported: with the archive on that is the
+ * last app.archive.after-days, otherwise the retention window. Older lines are rejected
+ * with that reason and the response names the limit ({@code writableFrom}); to load
+ * years of history, import before enabling the archive (the nightly run then moves it to
+ * segments) or raise after-days for the import. Rows inside the hot-tier window are
+ * added to HotSampleTier once their file commits, so /metrics agrees with /series;
+ * imported rows never raise alerts or go out on the live stream.
+ */
+@Service
+public class SampleImportService {
+
+  private static final Logger log = LoggerFactory.getLogger(SampleImportService.class);
+
+  /** Upload part: its file name and content. */
+  public record ImportFile(String name, InputStreamSource content) {}
+
+  private final SampleImportRepository imports;
+  private final DeviceRepository devices;
+  private final SamplePartitionService partitions;
+  private final RollupService rollups;
+  private final HotSampleTier hot;
+  private final ThreadPoolExecutor pool;
+
+  public SampleImportService(
+      SampleImportRepository imports,
+      DeviceRepository devices,
+      SamplePartitionService partitions,
+      RollupService rollups,
+      HotSampleTier hot,
+      @Value("${app.import.parallelism:4}") int parallelism
+  ) {
+    this.imports = imports;
+    this.devices = devices;
+    this.partitions = partitions;
+    this.rollups = rollups;
+    this.hot = hot;
+
+    AtomicInteger n = new AtomicInteger();
+    int threads = Math.max(1, parallelism);
+    // shared by all imports, so concurrent requests together hold at most `threads` loads
+    this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), r -> {
+          Thread t = new Thread(r, "sample-import-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  /**
+   * Loads every file and rebuilds the affected rollups. {@code defaultDevice} is used
+   * for files without a device column and may be null.
+   */
+  public ImportResponse importFiles(List<ImportFile> files, Device defaultDevice) {
+    long started = System.nanoTime();
+    Run run = new Run(defaultDevice == null ? null : defaultDevice.getId(), partitions.writableHorizon());
+
+    List<Future<FileResult>> pending = new ArrayList<>();
+    for (ImportFile f : files) pending.add(pool.submit(() -> load(f, run)));
+    List<FileResult> results = new ArrayList<>();
+    for (Future<FileResult> f : pending) {
+      try {
+        results.add(f.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        pending.forEach(p -> p.cancel(true));
+        throw new IllegalStateException("import interrupted", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("import worker failed", e.getCause());
+      }
+    }
+
+    int rollupRows = 0;
+    for (Map.Entry<UUID, long[]> e : run.ranges.entrySet()) {
+      long[] r = e.getValue();
+      rollupRows += rollups.rebuild(SampleBatch.toInstant(r[0]), SampleBatch.toInstant(r[1] + 1), e.getKey());
+    }
+
+    long lines = 0, inserted = 0, duplicates = 0, rejected = 0;
+    for (FileResult r : results) {
+      lines += r.lines();
+      inserted += r.inserted();
+      duplicates += r.duplicates();
+      rejected += r.rejected();
+    }
+    long millis = (System.nanoTime() - started) / 1_000_000;
+    long rate = Math.round(inserted * 1000.0 / Math.max(millis, 1));
+    log.info("[IMPORT] {} files, {} devices: {} inserted, {} duplicates, {} rejected, {} rollup rows in {} ms ({} rows/s)",
+        files.size(), run.ranges.size(), inserted, duplicates, rejected, rollupRows, millis, rate);
+    return new ImportResponse(results, lines, inserted, duplicates, rejected, rollupRows, millis, rate,
+        run.writableFrom);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    pool.shutdownNow();
+  }
+
+  // ---------------------------------------------------------------------------
+
+  /** State shared by the files of one import. */
+  private static final class Run {
+    final UUID defaultDevice;
+    /** Start of the oldest day that still takes rows, null if unlimited. */
+    final Instant writableFrom;
+    /** "key:..." / "id:..." to the device id, empty if unknown; resolved once per import. */
+    final Map<String, Optional<UUID>> deviceCache = new ConcurrentHashMap<>();
+    /** Imported ts range per device, micros, for the rollup rebuild. */
+    final Map<UUID, long[]> ranges = new ConcurrentHashMap<>();
+
+    Run(UUID defaultDevice, Instant writableFrom) {
+      this.defaultDevice = defaultDevice;
+      this.writableFrom = writableFrom;
+    }
+  }
+
+  private FileResult load(ImportFile file, Run run) {
+    long started = System.nanoTime();
+    StagingReader rows = null;
+    try (Reader in = new BufferedReader(
+        new InputStreamReader(file.content().getInputStream(), StandardCharsets.UTF_8), 64 * 1024)) {
+      rows = new StagingReader(in, run);
+      StagingReader staged = rows;
+      Loaded loaded = imports.load(rows, () -> staged.days.forEach(partitions::prepareDay));
+      rows.ranges.forEach((device, r) -> run.ranges.merge(device, r,
+          (a, b) -> new long[] { Math.min(a[0], b[0]), Math.max(a[1], b[1]) }));
+      for (SampleBatch b : rows.recent) {   // committed: the hot tier may have them now
+        for (int i = 0; i < b.size(); i++) b.status(i, SampleBatch.STORED);
+        hot.onStored(b);
+      }
+
+      long millis = (System.nanoTime() - started) / 1_000_000;
+      log.info("[IMPORT] {}: {} lines, {} inserted, {} duplicates, {} rejected in {} ms",
+          file.name(), rows.lineNo, loaded.inserted(), loaded.staged() - loaded.inserted(), rows.rejects.count(), millis);
+      return new FileResult(file.name(), rows.lineNo, loaded.inserted(), loaded.staged() - loaded.inserted(),
+          rows.rejects.count(), rows.rejects.listed(), rows.rejects.truncated(), millis, null);
+    } catch (Exception e) {
+      String error = (e instanceof IllegalArgumentException) ? e.getMessage() : e.toString();
+      log.warn("[IMPORT] {}: rolled back: {}", file.name(), error);
+      return new FileResult(file.name(), rows == null ? 0 : rows.lineNo, 0, 0,
+          rows == null ? 0 : rows.rejects.count(), rows == null ? List.of() : rows.rejects.listed(),
+          rows != null && rows.rejects.truncated(), (System.nanoTime() - started) / 1_000_000, error);
+    }
+  }
+
+  private Optional<UUID> resolve(Run run, String cacheKey, String value) {
+    return run.deviceCache.computeIfAbsent(cacheKey, k -> {
+      if (k.startsWith("id:")) {
+        UUID id;
+        try {
+          id = UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+          return Optional.empty();
+        }
+        return devices.existsById(id) ? Optional.of(id) : Optional.empty();
+      }
+      return devices.findByDeviceKey(value).map(Device::getId);
+    });
+  }
+
+  /**
+   * Turns CSV lines into COPY text rows as COPY reads them, checking each line on the
+   * way: device known, ts parseable and in the writable range, readings numeric and
+   * finite. Rejected lines are counted and skipped.
+   */
+  private final class StagingReader extends Reader {
+    private static final int FILL_CHARS = 16 * 1024;
+    private static final int RECENT_BATCH_ROWS = 5000;
+
+    private final Reader in;
+    private final Run run;
+    private final StringBuilder line = new StringBuilder(256);
+    private final StringBuilder out = new StringBuilder(FILL_CHARS + 1024);
+    private int pos;
+    private boolean eof;
+
+    private final int tsCol, keyCol, idCol;
+    private final int[] channelCols = new int[SampleChannel.count()];
+    private final int width;
+
+    final List<Long> days = new ArrayList<>();
+    final Map<UUID, long[]> ranges = new HashMap<>();
+    final UploadLines.Rejects rejects = new UploadLines.Rejects();
+    /** Staged rows inside the hot-tier window, handed to it once the file commits. */
+    final List<SampleBatch> recent = new ArrayList<>();
+    private final long hotFrom = hot.horizonMicros();
+    long lineNo;
+
+    private final Map<Long, Boolean> writable = new HashMap<>();
+    private final double[] values = new double[SampleChannel.count()];
+    private final String[] cells;
+
+    StagingReader(Reader in, Run run) throws IOException {
+      this.in = in;
+      this.run = run;
+      int r = UploadLines.readLine(in, line);
+      lineNo = 1;
+      if (r == UploadLines.TOO_LONG || line.toString().isBlank()) {
+        throw new IllegalArgumentException("missing CSV header");
+      }
+      List<String> header = Arrays.stream(split(line.toString(), new String[64]))
+          .takeWhile(h -> h != null).map(h -> h.toLowerCase(Locale.ROOT)).toList();
+      width = header.size();
+      cells = new String[width + 1];
+      tsCol = header.indexOf("ts");
+      keyCol = header.indexOf("device_key");
+      idCol = header.indexOf("device_id");
+      SampleChannel[] all = SampleChannel.all();
+      for (int c = 0; c < all.length; c++) channelCols[c] = header.indexOf(all[c].column());
+      if (tsCol < 0) throw new IllegalArgumentException("header has no ts column");
+      if (keyCol < 0 && idCol < 0 && run.defaultDevice == null) {
+        throw new IllegalArgumentException("header has no device_key or device_id column and no deviceKey was given");
+      }
+      eof = (r == UploadLines.EOF);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      while (pos == out.length()) {
+        if (eof) return -1;
+        out.setLength(0);
+        pos = 0;
+        fill();
+      }
+      int n = Math.min(len, out.length() - pos);
+      out.getChars(pos, pos + n, cbuf, off);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    private void fill() throws IOException {
+      while (!eof && out.length() < FILL_CHARS) {
+        int r = UploadLines.readLine(in, line);
+        if (r == UploadLines.EOF) {
+          eof = true;
+          if (line.isEmpty()) return;
+        }
+        lineNo++;
+        String reason = (r == UploadLines.TOO_LONG)
+            ? UploadLines.TOO_LONG_REASON
+            : line.toString().isBlank() ? null : stage(line.toString());
+        if (reason != null) rejects.add(lineNo, reason);
+      }
+    }
+
+    /** Appends one row to {@code out}; returns the reject reason instead if the line is bad. */
+    private String stage(String csv) {
+      int n = count(split(csv, cells));
+      if (n != width) return "expected " + width + " columns, got " + (n > width ? "more" : n);
+
+      UUID device;
+      if (keyCol >= 0 && !cells[keyCol].isEmpty()) {
+        device = resolve(run, "key:" + cells[keyCol], cells[keyCol]).orElse(null);
+        if (device == null) return "unknown device_key";
+      } else if (idCol >= 0 && !cells[idCol].isEmpty()) {
+        device = resolve(run, "id:" + cells[idCol], cells[idCol]).orElse(null);
+        if (device == null) return "unknown device_id";
+      } else if (run.defaultDevice != null) {
+        device = run.defaultDevice;
+      } else {
+        return "missing device";
+      }
+
+      long ts;
+      try {
+        ts = SampleBatch.toMicros(parseTs(cells[tsCol]));
+      } catch (DateTimeParseException | ArithmeticException | NumberFormatException e) {
+        return "bad ts";
+      }
+      long day = Math.floorDiv(ts, 86_400_000_000L);
+      Boolean ok = writable.get(day);
+      if (ok == null) {
+        ok = partitions.isWritableDay(day);
+        writable.put(day, ok);
+        if (ok) days.add(day);
+      }
+      if (!ok) {
+        return (run.writableFrom != null && ts < SampleBatch.toMicros(run.writableFrom))
+            ? "ts before " + run.writableFrom + " (day archived or past retention)"
+            : "ts too far in the future";
+      }
+
+      int mark = out.length();
+      out.append(device).append('\t').append(SampleBatch.toInstant(ts));
+      SampleChannel[] all = SampleChannel.all();
+      for (int c = 0; c < all.length; c++) {
+        out.append('\t');
+        String v = channelCols[c] < 0 ? "" : cells[channelCols[c]];
+        if (v.isEmpty()) {
+          out.append("\\N");
+          values[c] = Double.NaN;
+          continue;
+        }
+        double d;
+        try {
+          d = Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+          out.setLength(mark);
+          return "bad " + all[c].column();
+        }
+        if (!Double.isFinite(d)) {
+          out.setLength(mark);
+          return "bad " + all[c].column();
+        }
+        out.append(d);
+        values[c] = d;
+      }
+      out.append('\n');
+      if (ts >= hotFrom) keepRecent(device, ts);
+
+      long[] r = ranges.get(device);
+      if (r == null) {
+        ranges.put(device, new long[] { ts, ts });
+      } else {
+        r[0] = Math.min(r[0], ts);
+        r[1] = Math.max(r[1], ts);
+      }
+      return null;
+    }
+
+    private void keepRecent(UUID device, long ts) {
+      SampleBatch b = recent.isEmpty() ? null : recent.get(recent.size() - 1);
+      if (b == null || b.isFull()) recent.add(b = new SampleBatch(RECENT_BATCH_ROWS));
+      int row = b.append(device, ts);
+      for (SampleChannel ch : SampleChannel.all()) {
+        if (!Double.isNaN(values[ch.ordinal()])) b.put(row, ch, values[ch.ordinal()]);
+      }
+    }
+  }
+
+  /** ISO-8601 (with offset) or epoch seconds, fraction allowed. */
+  private static Instant parseTs(String s) {
+    char c = s.isEmpty() ? ' ' : s.charAt(0);
+    if ((c >= '0' && c <= '9' || c == '-') && s.indexOf('T') < 0 && s.indexOf(':') < 0) {
+      BigDecimal secs = new BigDecimal(s);
+      return Instant.ofEpochSecond(0, secs.movePointRight(9).longValueExact());
+    }
+    return (s.endsWith("Z") || s.endsWith("z")) ? Instant.parse(s) : OffsetDateTime.parse(s).toInstant();
+  }
+
+  /**
+   * Splits one CSV line into {@code into}, trimming cells and stripping surrounding
+   * double quotes; cells past the array's end are dropped, unused slots set to null.
+   * Quoted commas are not supported (logger exports don't produce them).
+   */
+  private static String[] split(String line, String[] into) {
+    Arrays.fill(into, null);
+    int start = 0, i = 0;
+    while (i < into.length) {
+      int comma = line.indexOf(',', start);
+      String cell = (comma < 0 ? line.substring(start) : line.substring(start, comma)).trim();
+      if (cell.length() >= 2 && cell.charAt(0) == '"' && cell.charAt(cell.length() - 1) == '"') {
+        cell = cell.substring(1, cell.length() - 1);
+      }
+      into[i++] = cell;
+      if (comma < 0) break;
+      start = comma + 1;
+    }
+    return into;
+  }
+
+  private static int count(String[] cells) {
+    int n = 0;
+    while (n < cells.length && cells[n] != null) n++;
+    return n;
+  }
+}
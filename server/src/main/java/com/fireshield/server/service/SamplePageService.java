@@ -0,0 +1,80 @@
+// service/SamplePageService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.api.dto.RawSample;
+import com.fireshield.server.api.dto.SamplePage;
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SamplePageRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Raw sample listing for one device (GET /samples), paged by keyset; see
+ * SamplePageRepository. The cursor is the (ts, id) of a page's last row and its order,
+ * base64url-encoded; clients pass it back unchanged. Days already moved to the archive
+ * are not listed (GET /export/samples covers them).
+ */
+@Service
+public class SamplePageService {
+
+  public static final int DEFAULT_LIMIT = 100;
+  public static final int MAX_LIMIT = 1000;
+
+  private static final byte CURSOR_ASC = 1, CURSOR_DESC = 2;
+
+  private final SamplePageRepository pages;
+
+  public SamplePageService(SamplePageRepository pages) {
+    this.pages = pages;
+  }
+
+  /** Samples of the device with from &lt;= ts &lt; to, oldest or newest first, after the cursor if given. */
+  public SamplePage page(UUID deviceId, Instant from, Instant to, boolean desc, Integer limit, String cursor) {
+    int n = (limit == null) ? DEFAULT_LIMIT : limit;
+    if (n < 1 || n > MAX_LIMIT) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be 1.." + MAX_LIMIT);
+    }
+    Instant afterTs = null;
+    long afterId = 0;
+    if (cursor != null && !cursor.isEmpty()) {
+      ByteBuffer b = decode(cursor);
+      if (b.get() != (desc ? CURSOR_DESC : CURSOR_ASC)) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "cursor was issued for the other order");
+      }
+      afterTs = SampleBatch.toInstant(b.getLong());
+      afterId = b.getLong();
+    }
+
+    // one extra row tells whether another page follows
+    List<RawSample> rows = pages.page(deviceId, from, to, afterTs, afterId, desc, n + 1);
+    if (rows.size() <= n) return new SamplePage(rows, null);
+    List<RawSample> items = rows.subList(0, n);
+    return new SamplePage(List.copyOf(items), encode(items.get(n - 1), desc));
+  }
+
+  private static String encode(RawSample last, boolean desc) {
+    ByteBuffer b = ByteBuffer.allocate(17)
+        .put(desc ? CURSOR_DESC : CURSOR_ASC)
+        .putLong(SampleBatch.toMicros(last.ts()))
+        .putLong(last.id());
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(b.array());
+  }
+
+  private static ByteBuffer decode(String cursor) {
+    byte[] raw;
+    try {
+      raw = Base64.getUrlDecoder().decode(cursor);
+    } catch (IllegalArgumentException e) {
+      raw = null;
+    }
+    if (raw == null || raw.length != 17) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bad cursor");
+    return ByteBuffer.wrap(raw);
+  }
+}
@@ -0,0 +1,201 @@
+// service/SamplePartitionService.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SamplePartitionRepository;
+import com.fireshield.server.repo.SamplePartitionRepository.Partition;
+import com.fireshield.server.repo.SamplePartitionRepository.PlanCheck;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns the daily partitions of samples:
+ * - makes sure the partition for every day a batch writes into exists (rows outside
+ *   the retention window, or on days already due for the archive, are rejected
+ *   instead: they would only be dropped again);
+ * - creates partitions ahead of time and drops expired ones on a schedule;
+ * - EXPLAINs a windowed query at startup to check that partition pruning applies.
+ */
+@Service
+public class SamplePartitionService {
+
+  private static final Logger log = LoggerFactory.getLogger(SamplePartitionService.class);
+  private static final long DAY_MICROS = 86_400_000_000L;
+
+  /** Representative of the /metrics and /report window predicates. */
+  static final String WINDOW_PROBE =
+      "SELECT count(*) FROM samples WHERE ts >= CURRENT_TIMESTAMP - make_interval(hours => ?)";
+
+  private final SamplePartitionRepository partitions;
+  private final int retentionDays;
+  private final int premakeDays;
+  private final int maxFutureDays;
+  private final int archiveAfterDays;   // 0 when the archive is off
+
+  /** Epoch days known to have a partition; only misses go to the database. */
+  private final Set<Long> known = ConcurrentHashMap.newKeySet();
+
+  public SamplePartitionService(
+      SamplePartitionRepository partitions,
+      MeterRegistry meters,
+      @Value("${app.samples.retention-days:0}") int retentionDays,
+      @Value("${app.samples.premake-days:7}") int premakeDays,
+      @Value("${app.samples.max-future-days:7}") int maxFutureDays,
+      @Value("${app.archive.enabled:false}") boolean archive,
+      @Value("${app.archive.after-days:30}") int archiveAfterDays
+  ) {
+    this.partitions = partitions;
+    this.retentionDays = retentionDays;
+    this.premakeDays = Math.max(1, premakeDays);
+    this.maxFutureDays = Math.max(1, maxFutureDays);
+    this.archiveAfterDays = archive ? Math.max(1, archiveAfterDays) : 0;
+    if (archive && retentionDays > 0 && this.archiveAfterDays >= retentionDays) {
+      log.warn("[PARTITIONS] archive after-days {} >= retention {}; partitions expire before they are archived",
+          this.archiveAfterDays, retentionDays);
+    }
+    meters.gauge("fireshield.samples.partitions", known, Set::size);
+  }
+
+  /**
+   * Called before a batch is written: rejects (FAILED) PENDING rows outside
+   * [writable horizon, today + max-future-days] and creates any missing partitions.
+   */
+  public void prepare(SampleBatch batch) {
+    long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    long oldest = oldestWritableDay(today);
+    long newest = today + maxFutureDays;
+    long last = Long.MIN_VALUE;
+    for (int row = 0; row < batch.size(); row++) {
+      if (batch.status(row) != SampleBatch.PENDING) continue;
+      long day = Math.floorDiv(batch.tsMicros(row), DAY_MICROS);
+      if (day < oldest || day > newest) {
+        batch.status(row, SampleBatch.FAILED);
+        continue;
+      }
+      if (day != last) {   // batches are mostly one or two days; skip the set lookup per row
+        ensure(day);
+        last = day;
+      }
+    }
+  }
+
+  /**
+   * Same range check for one UTC epoch day, for writers that bypass SampleBatch (bulk
+   * COPY import); see {@link #prepareDay} to also create the partition.
+   */
+  public boolean isWritableDay(long epochDay) {
+    long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    return epochDay >= oldestWritableDay(today) && epochDay <= today + maxFutureDays;
+  }
+
+  /** False if the day is outside the writable range, otherwise makes sure its partition exists. */
+  public boolean prepareDay(long epochDay) {
+    if (!isWritableDay(epochDay)) return false;
+    ensure(epochDay);
+    return true;
+  }
+
+  /**
+   * Start of the oldest day whose partition still takes rows, or null when neither
+   * retention nor the archive limits it. Older days are expired or archived (see
+   * SampleArchiveService); rollup rebuilds stop here.
+   */
+  public Instant writableHorizon() {
+    long oldest = oldestWritableDay(LocalDate.now(ZoneOffset.UTC).toEpochDay());
+    if (oldest == Long.MIN_VALUE) return null;
+    return LocalDate.ofEpochDay(oldest).atStartOfDay(ZoneOffset.UTC).toInstant();
+  }
+
+  private long oldestWritableDay(long today) {
+    long oldest = (retentionDays > 0) ? today - retentionDays + 1 : Long.MIN_VALUE;
+    if (archiveAfterDays > 0) oldest = Math.max(oldest, today - archiveAfterDays);
+    return oldest;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onStartup() {
+    try {
+      maintain();
+      checkPruning();
+    } catch (DataAccessException e) {
+      log.warn("[PARTITIONS] startup maintenance failed: {}", e.getMessage());
+    }
+  }
+
+  /** Hourly: create the next premake-days partitions and drop the ones past retention. */
+  @Scheduled(cron = "${app.samples.maintenance-cron:0 5 * * * *}", zone = "UTC")
+  public void maintain() {
+    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    for (int i = 0; i <= premakeDays; i++) ensure(today.plusDays(i).toEpochDay());
+
+    if (retentionDays > 0) {
+      LocalDate oldest = today.minusDays(retentionDays - 1L);
+      for (Partition p : partitions.list()) {
+        if (!p.day().isBefore(oldest)) continue;
+        partitions.drop(p);
+        log.info("[PARTITIONS] dropped {} (retention {} days)", p.name(), retentionDays);
+      }
+    }
+    // swap in place so concurrent ingest keeps seeing the partitions that still exist
+    Set<Long> present = new HashSet<>();
+    partitions.list().forEach(p -> present.add(p.day().toEpochDay()));
+    known.addAll(present);
+    known.retainAll(present);
+  }
+
+  /**
+   * EXPLAINs a 24 h window query and reports how many partitions it still scans.
+   * Logs a warning if nothing was pruned while there are partitions to prune.
+   */
+  public Map<String, Object> checkPruning() {
+    int total = partitions.list().size();
+    PlanCheck plan = partitions.explain(WINDOW_PROBE, 24);
+    boolean pruned = plan.scanned() < total || plan.removed() > 0;
+    if (!pruned && total > 2) {
+      log.warn("[PARTITIONS] window query scans all {} partitions; check the ts predicate", total);
+    } else {
+      log.info("[PARTITIONS] window query scans {} of {} partitions", plan.scanned(), total);
+    }
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("partitions", total);
+    out.put("scanned", plan.scanned());
+    out.put("prunedAtRuntime", plan.removed());
+    out.put("pruned", pruned);
+    out.put("retentionDays", retentionDays);
+    return out;
+  }
+
+  /**
+   * Creates the partition for a day not seen yet. No lock is held around the DDL, so an
+   * ingest thread (possibly virtual) never blocks others while it waits on the database:
+   * ensure_sample_partition is idempotent, and two threads racing on a new day both just
+   * run it. Days up to premake-days ahead are created by {@link #maintain()} already.
+   */
+  private void ensure(long epochDay) {
+    if (known.contains(epochDay)) return;
+    LocalDate day = LocalDate.ofEpochDay(epochDay);
+    try {
+      partitions.ensure(day);
+    } catch (DataAccessException e) {
+      // another thread or instance may have created it at the same moment; the retry is a no-op then
+      partitions.ensure(day);
+    }
+    known.add(epochDay);
+  }
+}
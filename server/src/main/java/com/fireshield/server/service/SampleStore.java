@@ -0,0 +1,70 @@
+// service/SampleStore.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SampleBatchWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Single write entry point shared by every ingest path (JSON, binary frames, NDJSON
+ * backfill, write-behind flushers). Makes sure the target partitions exist, writes the
+ * batch, remembers the stored keys for the duplicate pre-check, then fans the batch out
+ * to the {@link IngestListener}s.
+ */
+@Service
+public class SampleStore {
+
+  private static final Logger log = LoggerFactory.getLogger(SampleStore.class);
+
+  private final SampleBatchWriter writer;
+  private final SamplePartitionService partitions;
+  private final RecentSampleKeys recent;
+  private final ObjectProvider<IngestListener> listeners;
+  private volatile List<IngestListener> resolved;
+
+  public SampleStore(SampleBatchWriter writer, SamplePartitionService partitions,
+                     RecentSampleKeys recent, ObjectProvider<IngestListener> listeners) {
+    this.writer = writer;
+    this.partitions = partitions;
+    this.recent = recent;
+    this.listeners = listeners;
+  }
+
+  /** Per-chunk autocommit with a per-row fallback (request-sized batches). */
+  public void write(SampleBatch batch) {
+    partitions.prepare(batch);
+    writer.write(batch);
+    afterWrite(batch);
+  }
+
+  /** Whole batch in one transaction, per-row fallback if it rolls back (large batches). */
+  public void writeAtomically(SampleBatch batch) {
+    partitions.prepare(batch);
+    writer.writeAtomically(batch);
+    afterWrite(batch);
+  }
+
+  private void afterWrite(SampleBatch batch) {
+    if (batch.count(SampleBatch.STORED) == 0) return;
+    recent.remember(batch, SampleBatch.STORED);
+    for (IngestListener l : listeners()) {
+      try {
+        l.onStored(batch);
+      } catch (Exception e) {
+        // rows are committed; a listener failure must not turn into a rejected upload
+        log.warn("[INGEST] listener {} failed: {}", l.getClass().getSimpleName(), e.toString());
+      }
+    }
+  }
+
+  private List<IngestListener> listeners() {
+    List<IngestListener> l = resolved;
+    if (l == null) resolved = l = listeners.orderedStream().toList();
+    return l;
+  }
+}
@@ -0,0 +1,269 @@
+// service/SegmentCodec.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Columnar encoding of one device's samples (one archive segment, see SampleArchiveService).
+ * Timestamps (micros) are delta-of-delta coded and every channel is XOR coded against
+ * its previous value (Gorilla, Pelkonen et al. 2015), each column in its own bit stream
+ * so a reader decodes only the channels it needs. Missing readings are stored as NaN,
+ * which costs one bit per row while a channel stays missing. Rows must be added in
+ * timestamp order.
+ *
+ * <pre>
+ * int magic, int rows, long minTs, long maxTs,
+ * int[1 + channels] column offsets, int end offset,
+ * column blocks (timestamps, then channels in SampleChannel order)
+ * </pre>
+ */
+final class SegmentCodec {
+
+  static final int MAGIC = 0x46534731;   // "FSG1"
+  static final int CHANNELS = SampleChannel.count();
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 * (CHANNELS + 2);
+
+  private SegmentCodec() {}
+
+  // ---------------------------------------------------------------------------
+  // encoding
+  // ---------------------------------------------------------------------------
+
+  /** Streams rows into per-column bit streams; {@link #finish} lays out the segment. */
+  static final class Encoder {
+    private final BitWriter ts = new BitWriter();
+    private final BitWriter[] cols = new BitWriter[CHANNELS];
+    private final long[] prevBits = new long[CHANNELS];
+    private final int[] prevLead = new int[CHANNELS], prevTrail = new int[CHANNELS];
+    private int rows;
+    private long minTs, maxTs, prevTs, prevDelta;
+
+    Encoder() {
+      for (int c = 0; c < CHANNELS; c++) cols[c] = new BitWriter();
+      Arrays.fill(prevLead, -1);
+    }
+
+    /** One row; {@code values[c]} is channel c in SampleChannel order, NaN if missing. */
+    void add(long tsMicros, double[] values) {
+      if (rows == 0) {
+        ts.write(tsMicros, 64);
+        minTs = tsMicros;
+      } else if (tsMicros < prevTs) {
+        throw new IllegalArgumentException("rows must be in timestamp order");
+      } else if (rows == 1) {
+        prevDelta = tsMicros - prevTs;
+        ts.write(prevDelta, 64);
+      } else {
+        long delta = tsMicros - prevTs;
+        writeDod(ts, delta - prevDelta);
+        prevDelta = delta;
+      }
+      prevTs = tsMicros;
+      maxTs = tsMicros;
+
+      for (int c = 0; c < CHANNELS; c++) {
+        long bits = Double.doubleToLongBits(values[c]);   // canonical NaN
+        if (rows == 0) {
+          cols[c].write(bits, 64);
+        } else {
+          writeXor(c, bits ^ prevBits[c]);
+        }
+        prevBits[c] = bits;
+      }
+      rows++;
+    }
+
+    int rows() { return rows; }
+
+    byte[] finish() {
+      int size = HEADER_BYTES + ts.byteLength();
+      for (BitWriter w : cols) size += w.byteLength();
+      ByteBuffer out = ByteBuffer.allocate(size);
+      out.putInt(MAGIC).putInt(rows).putLong(minTs).putLong(maxTs);
+      int offset = HEADER_BYTES;
+      out.putInt(offset);
+      offset += ts.byteLength();
+      for (BitWriter w : cols) {
+        out.putInt(offset);
+        offset += w.byteLength();
+      }
+      out.putInt(offset);
+      ts.copyTo(out);
+      for (BitWriter w : cols) w.copyTo(out);
+      return out.array();
+    }
+
+    private void writeXor(int c, long xor) {
+      BitWriter w = cols[c];
+      if (xor == 0) {
+        w.write(0, 1);
+        return;
+      }
+      int lead = Math.min(31, Long.numberOfLeadingZeros(xor));
+      int trail = Long.numberOfTrailingZeros(xor);
+      if (prevLead[c] >= 0 && lead >= prevLead[c] && trail >= prevTrail[c]) {
+        // fits the previous meaningful window
+        w.write(0b10, 2);
+        w.write(xor >>> prevTrail[c], 64 - prevLead[c] - prevTrail[c]);
+      } else {
+        int len = 64 - lead - trail;
+        w.write(0b11, 2);
+        w.write(lead, 5);
+        w.write(len - 1, 6);
+        w.write(xor >>> trail, len);
+        prevLead[c] = lead;
+        prevTrail[c] = trail;
+      }
+    }
+  }
+
+  /** Delta-of-delta buckets sized for microsecond timestamps with jitter. */
+  private static void writeDod(BitWriter w, long dod) {
+    if (dod == 0) {
+      w.write(0, 1);
+    } else if (fits(dod, 8)) {
+      w.write(0b10, 2);
+      w.write(dod, 8);
+    } else if (fits(dod, 14)) {
+      w.write(0b110, 3);
+      w.write(dod, 14);
+    } else if (fits(dod, 24)) {
+      w.write(0b1110, 4);
+      w.write(dod, 24);
+    } else if (fits(dod, 36)) {
+      w.write(0b11110, 5);
+      w.write(dod, 36);
+    } else {
+      w.write(0b11111, 5);
+      w.write(dod, 64);
+    }
+  }
+
+  private static boolean fits(long v, int bits) {
+    long limit = 1L << (bits - 1);
+    return v >= -limit && v < limit;
+  }
+
+  // ---------------------------------------------------------------------------
+  // decoding
+  // ---------------------------------------------------------------------------
+
+  /** Header fields of a segment, read without touching the column blocks. */
+  record Header(int rows, long minTs, long maxTs) {}
+
+  static Header header(ByteBuffer segment) {
+    if (segment.getInt(0) != MAGIC) throw new IllegalArgumentException("not a sample segment");
+    return new Header(segment.getInt(4), segment.getLong(8), segment.getLong(16));
+  }
+
+  /** All timestamps of the segment. */
+  static long[] timestamps(ByteBuffer segment) {
+    int rows = header(segment).rows();
+    long[] out = new long[rows];
+    if (rows == 0) return out;
+    BitReader r = new BitReader(segment, segment.getInt(24));
+    out[0] = r.read(64);
+    if (rows == 1) return out;
+    long delta = r.read(64);
+    out[1] = out[0] + delta;
+    for (int i = 2; i < rows; i++) {
+      delta += readDod(r);
+      out[i] = out[i - 1] + delta;
+    }
+    return out;
+  }
+
+  /** All values of one channel; NaN where the reading was missing. */
+  static double[] channel(ByteBuffer segment, SampleChannel ch) {
+    int rows = header(segment).rows();
+    double[] out = new double[rows];
+    if (rows == 0) return out;
+    BitReader r = new BitReader(segment, segment.getInt(24 + 4 * (1 + ch.ordinal())));
+    long bits = r.read(64);
+    out[0] = Double.longBitsToDouble(bits);
+    int lead = 0, trail = 0;
+    for (int i = 1; i < rows; i++) {
+      if (r.read(1) != 0) {
+        if (r.read(1) != 0) {
+          lead = (int) r.read(5);
+          int len = (int) r.read(6) + 1;
+          trail = 64 - lead - len;
+        }
+        bits ^= r.read(64 - lead - trail) << trail;
+      }
+      out[i] = Double.longBitsToDouble(bits);
+    }
+    return out;
+  }
+
+  private static long readDod(BitReader r) {
+    if (r.read(1) == 0) return 0;
+    if (r.read(1) == 0) return r.readSigned(8);
+    if (r.read(1) == 0) return r.readSigned(14);
+    if (r.read(1) == 0) return r.readSigned(24);
+    if (r.read(1) == 0) return r.readSigned(36);
+    return r.read(64);
+  }
+
+  // ---------------------------------------------------------------------------
+  // bit streams
+  // ---------------------------------------------------------------------------
+
+  private static final class BitWriter {
+    private byte[] buf = new byte[256];
+    private long bitLen;
+
+    /** Appends the low {@code n} bits of {@code value}, most significant first. */
+    void write(long value, int n) {
+      while (n > 0) {
+        int byteIdx = (int) (bitLen >>> 3);
+        if (byteIdx == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int free = 8 - (int) (bitLen & 7);
+        int take = Math.min(free, n);
+        int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+        buf[byteIdx] |= (byte) (chunk << (free - take));
+        bitLen += take;
+        n -= take;
+      }
+    }
+
+    int byteLength() {
+      return (int) ((bitLen + 7) >>> 3);
+    }
+
+    void copyTo(ByteBuffer out) {
+      out.put(buf, 0, byteLength());
+    }
+  }
+
+  private static final class BitReader {
+    private final ByteBuffer buf;
+    private long bitPos;
+
+    BitReader(ByteBuffer buf, int byteOffset) {
+      this.buf = buf;
+      this.bitPos = (long) byteOffset << 3;
+    }
+
+    long read(int n) {
+      long v = 0;
+      while (n > 0) {
+        int b = buf.get((int) (bitPos >>> 3)) & 0xff;
+        int avail = 8 - (int) (bitPos & 7);
+        int take = Math.min(avail, n);
+        v = (v << take) | ((b >>> (avail - take)) & ((1 << take) - 1));
+        bitPos += take;
+        n -= take;
+      }
+      return v;
+    }
+
+    long readSigned(int n) {
+      long v = read(n);
+      return (v << (64 - n)) >> (64 - n);
+    }
+  }
+}
@@ -1,51 +1,261 @@
 package com.fireshield.server.service;
 
+import com.fireshield.server.api.dto.PercentilePoint;
+import com.fireshield.server.api.dto.SeriesBucket;
+import com.fireshield.server.api.dto.SeriesBucket.ChannelStats;
 import com.fireshield.server.api.dto.TimePoint;
-import com.fireshield.server.repo.SampleRepository;
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleRollupRepository;
+import com.fireshield.server.repo.SampleRollupRepository.BucketSketch;
+import com.fireshield.server.repo.SampleSeriesRepository;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Chart series for /series, read from the incrementally maintained sample_rollups
+ * (see RollupService), so a week or a month costs about the same as a day.
+ * Buckets are UTC-aligned; the first bucket covers its whole interval. Only the
+ * scope's devices are read. /series/multi (arbitrary widths, several channels) reads
+ * samples directly, since the rollups keep fixed buckets and TVOC only.
+ */
 @Service
 public class SeriesService {
-  private final SampleRepository repo;
+  /** Cap on buckets per /series/multi response; a wider window needs a wider bucket. */
+  static final int MAX_BUCKETS = 5000;
 
-  public SeriesService(SampleRepository repo) {
-    this.repo = repo;
+  private static final Pattern WIDTH = Pattern.compile("(\\d{1,6})([smhd])");
+
+  private final SampleRollupRepository rollups;
+  private final SampleSeriesRepository samples;
+  private final SampleArchiveService archive;
+
+  public SeriesService(SampleRollupRepository rollups, SampleSeriesRepository samples, SampleArchiveService archive) {
+    this.rollups = rollups;
+    this.samples = samples;
+    this.archive = archive;
   }
 
-    public List<TimePoint> getSeriesDaily(Integer daysParam) {
+  public List<TimePoint> getSeriesDaily(Integer daysParam, DeviceScope scope) {
     int days = (daysParam == null || daysParam <= 0) ? 7 : daysParam;
-    List<Object[]> rows = repo.seriesDays(days);
-    List<TimePoint> out = new ArrayList<>(rows.size());
-    for (Object[] r : rows) {
-        Instant ts = ((java.sql.Timestamp) r[0]).toInstant();
-        Double v = (r[1] == null) ? null : ((Number) r[1]).doubleValue();
-        out.add(new TimePoint(ts, v));
+    return rollups.seriesDays(days, scope.deviceIds());
+  }
+
+  public List<TimePoint> getSeries(Integer hoursParam, String bucketParam, DeviceScope scope) {
+    return getSeries(hoursParam, bucketParam, null, scope);
+  }
+
+  /**
+   * Like getSeries, but with at most {@code maxPoints} points: when the window holds more
+   * buckets than that, rows are streamed through LTTB (see LttbDownsampler) so spikes stay
+   * visible. Null or non-positive maxPoints means no cap; values below 3 are raised to 3.
+   */
+  @Transactional(readOnly = true)   // lets the driver stream the rows with a fetch size
+  public List<TimePoint> getSeries(Integer hoursParam, String bucketParam, Integer maxPoints, DeviceScope scope) {
+    int hours = (hoursParam == null || hoursParam <= 0) ? 24 : hoursParam;
+    if (scope.isEmpty()) return List.of();
+    String bucket = bucketOrDefault(bucketParam);
+    if (maxPoints == null || maxPoints <= 0 || bucketsIn(hours, bucket) <= maxPoints) {
+      return rollups.series(hours, bucket, scope.deviceIds());
     }
+
+    List<TimePoint> out = new ArrayList<>(Math.max(3, maxPoints));
+    Instant end = Instant.now();
+    LttbDownsampler lttb = new LttbDownsampler(end.minus(Duration.ofHours(hours)), end, Math.max(3, maxPoints), out::add);
+    rollups.series(hours, bucket, scope.deviceIds(), lttb);
+    lttb.finish();
     return out;
-    }
+  }
+
+  /** Upper bound on buckets a window can return (the first one is aligned down). */
+  private static long bucketsIn(int hours, String bucket) {
+    return switch (bucket) {
+      case "minute" -> hours * 60L + 1;
+      case "day" -> hours / 24 + 2;
+      default -> hours + 1L;
+    };
+  }
+
+  /** Like getSeries, plus p50/p95/p99 per bucket from the per-device sketches, merged here. */
+  public List<PercentilePoint> getPercentiles(Integer hoursParam, String bucketParam, DeviceScope scope) {
+    int hours = (hoursParam == null || hoursParam <= 0) ? 24 : hoursParam;
+    if (scope.isEmpty()) return List.of();
 
+    List<PercentilePoint> out = new ArrayList<>();
+    Instant current = null;
+    long cnt = 0;
+    double sum = 0;
+    QuantileSketch sketch = null;
+    for (BucketSketch b : rollups.sketches(hours, bucketOrDefault(bucketParam), scope.deviceIds())) {
+      if (!b.bucketTs().equals(current)) {   // rows come ordered by bucket
+        if (current != null) out.add(point(current, cnt, sum, sketch));
+        current = b.bucketTs();
+        cnt = 0;
+        sum = 0;
+        sketch = new QuantileSketch();
+      }
+      cnt += b.cnt();
+      sum += b.sum();
+      sketch.merge(QuantileSketch.fromJson(b.sketch()));
+    }
+    if (current != null) out.add(point(current, cnt, sum, sketch));
+    return out;
+  }
 
-  public List<TimePoint> getSeries(Integer hoursParam, String bucketParam) {
+  /**
+   * Buckets of any width (e.g. 5m, 15m, 6h; minute/hour/day also accepted) over the last
+   * {@code hours}, with count and avg/min/max for each requested channel (default TVOC),
+   * all from one scan of samples (plus the archive segments when the window reaches back
+   * that far). Empty buckets are included with count 0.
+   * 400 for an unknown width or channel, or more than MAX_BUCKETS buckets.
+   */
+  public List<SeriesBucket> getMulti(Integer hoursParam, String widthParam, String channelsParam, DeviceScope scope) {
     int hours = (hoursParam == null || hoursParam <= 0) ? 24 : hoursParam;
-    String bucket = (bucketParam == null) ? "hour" : bucketParam;
-    if (!bucket.equals("minute") && !bucket.equals("hour") && !bucket.equals("day")) {
-      bucket = "hour";
+    Duration width = parseWidth(widthParam);
+    List<SampleChannel> channels = parseChannels(channelsParam);
+    if (Duration.ofHours(hours).dividedBy(width) >= MAX_BUCKETS) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Too many buckets; use a width of at least " + (hours * 60L / MAX_BUCKETS + 1) + "m");
+    }
+    if (scope.isEmpty()) return List.of();
+
+    Instant to = Instant.now();
+    long w = width.toMillis();
+    Instant from = Instant.ofEpochMilli(Math.floorDiv(to.minus(Duration.ofHours(hours)).toEpochMilli(), w) * w);
+    List<SeriesBucket> out = samples.buckets(from, to, width, channels, scope.deviceIds());
+    if (archive.overlaps(from)) out = withArchive(out, from, to, w, channels, scope);
+    return out;
+  }
+
+  /** Per-channel count/sum/min/max of archived readings in one bucket. */
+  private static final class ColdBucket {
+    long rows;
+    final long[] n;
+    final double[] sum, min, max;
+
+    ColdBucket(int channels) {
+      n = new long[channels];
+      sum = new double[channels];
+      min = new double[channels];
+      max = new double[channels];
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
     }
-    
+  }
+
+  /** Folds archived readings into the gap-filled buckets (a bucket may span both tiers). */
+  private List<SeriesBucket> withArchive(List<SeriesBucket> buckets, Instant from, Instant to, long widthMs,
+                                         List<SampleChannel> channels, DeviceScope scope) {
+    Map<Long, ColdBucket> cold = new HashMap<>();
+    int k = channels.size();
+    archive.scan(scope.deviceIds(), from, to, channels.toArray(SampleChannel[]::new), (device, ts, v) -> {
+      long start = Math.floorDiv(ts / 1000, widthMs) * widthMs;
+      ColdBucket b = cold.computeIfAbsent(start, s -> new ColdBucket(k));
+      b.rows++;
+      for (int c = 0; c < k; c++) {
+        if (Double.isNaN(v[c])) continue;
+        b.n[c]++;
+        b.sum[c] += v[c];
+        b.min[c] = Math.min(b.min[c], v[c]);
+        b.max[c] = Math.max(b.max[c], v[c]);
+      }
+    });
+    if (cold.isEmpty()) return buckets;
 
-    List<Object[]> rows = repo.series(hours, bucket);
-    List<TimePoint> out = new ArrayList<>(rows.size());
-    for (Object[] r : rows) {
-      // r[0] -> timestamp (bucketed), r[1] -> avg_tvoc
-      Instant ts = (r[0] instanceof Timestamp t) ? t.toInstant() : Instant.parse(String.valueOf(r[0]));
-      Double v = (r[1] == null) ? null : ((Number) r[1]).doubleValue();
-      out.add(new TimePoint(ts, v));
+    List<SeriesBucket> out = new ArrayList<>(buckets.size());
+    for (SeriesBucket sb : buckets) {
+      ColdBucket cb = cold.get(sb.ts().toEpochMilli());
+      if (cb == null) {
+        out.add(sb);
+        continue;
+      }
+      Map<String, ChannelStats> stats = new LinkedHashMap<>();
+      for (int c = 0; c < k; c++) {
+        String col = channels.get(c).column();
+        ChannelStats hot = sb.channels().get(col);
+        long n = hot.count() + cb.n[c];
+        if (n == 0) {
+          stats.put(col, hot);
+          continue;
+        }
+        double sum = cb.sum[c] + (hot.avg() == null ? 0 : hot.avg() * hot.count());
+        double min = hot.min() == null ? cb.min[c] : Math.min(hot.min(), cb.min[c]);
+        double max = hot.max() == null ? cb.max[c] : Math.max(hot.max(), cb.max[c]);
+        stats.put(col, new ChannelStats(n, sum / n, min, max));
+      }
+      out.add(new SeriesBucket(sb.ts(), sb.count() + cb.rows, stats));
     }
     return out;
   }
+
+  /** "15m", "6h", "1d", "90s" (at least a minute), or minute/hour/day; null means hour. */
+  static Duration parseWidth(String widthParam) {
+    if (widthParam == null || widthParam.isBlank()) return Duration.ofHours(1);
+    String w = widthParam.trim().toLowerCase(Locale.ROOT);
+    switch (w) {
+      case "minute": return Duration.ofMinutes(1);
+      case "hour": return Duration.ofHours(1);
+      case "day": return Duration.ofDays(1);
+      default: break;
+    }
+    Matcher m = WIDTH.matcher(w);
+    if (!m.matches()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "width must look like 5m, 15m, 6h or 1d");
+    }
+    long n = Long.parseLong(m.group(1));
+    Duration d = switch (m.group(2)) {
+      case "s" -> Duration.ofSeconds(n);
+      case "m" -> Duration.ofMinutes(n);
+      case "h" -> Duration.ofHours(n);
+      default -> Duration.ofDays(n);
+    };
+    if (d.compareTo(Duration.ofMinutes(1)) < 0) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "width must be at least 1m");
+    }
+    return d;
+  }
+
+  /** Comma-separated channel names (tvoc, formaldehyde, ...) or columns (tvoc_ppb, ...); null means TVOC. */
+  static List<SampleChannel> parseChannels(String channelsParam) {
+    if (channelsParam == null || channelsParam.isBlank()) return List.of(SampleChannel.TVOC);
+    Set<SampleChannel> out = EnumSet.noneOf(SampleChannel.class);
+    for (String raw : channelsParam.split(",")) {
+      String name = raw.trim();
+      if (name.isEmpty()) continue;
+      SampleChannel c = Arrays.stream(SampleChannel.all())
+          .filter(ch -> ch.name().equalsIgnoreCase(name) || ch.column().equalsIgnoreCase(name))
+          .findFirst()
+          .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown channel: " + name));
+      out.add(c);
+    }
+    return out.isEmpty() ? List.of(SampleChannel.TVOC) : List.copyOf(out);
+  }
+
+  private static PercentilePoint point(Instant ts, long cnt, double sum, QuantileSketch sketch) {
+    return new PercentilePoint(ts, cnt, cnt == 0 ? null : sum / cnt,
+        sketch.quantile(0.50), sketch.quantile(0.95), sketch.quantile(0.99));
+  }
+
+  private static String bucketOrDefault(String bucketParam) {
+    String bucket = (bucketParam == null) ? "hour" : bucketParam;
+    if (!bucket.equals("minute") && !bucket.equals("hour") && !bucket.equals("day")) {
+      bucket = "hour";
+    }
+    return bucket;
+  }
 }
@@ -0,0 +1,47 @@
+// service/SingleFlight.java
+package com.fireshield.server.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls with the same key into one: the first caller runs the
+ * supplier, everyone arriving while it runs waits for and shares its result (or its
+ * exception). Nothing is kept once the call completes; caching is the caller's job.
+ */
+public class SingleFlight<K, V> {
+
+  /** A shared result; {@code leader} is true only for the caller that actually ran it. */
+  public record Result<V>(V value, boolean leader) {}
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  public Result<V> run(K key, Supplier<V> call) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+    if (existing != null) {
+      try {
+        return new Result<>(existing.join(), false);
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException re) throw re;
+        throw e;
+      }
+    }
+    try {
+      V v = call.get();
+      mine.complete(v);
+      return new Result<>(v, true);
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  public int inFlight() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,65 @@
+// service/UploadLines.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.api.dto.BackfillResponse.LineReject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line handling shared by the text upload paths (NDJSON backfill, CSV import): a line
+ * reader that never holds more than MAX_LINE_CHARS, and a reject tally that lists only
+ * the first MAX_LISTED_REJECTS lines.
+ */
+final class UploadLines {
+
+  static final int MAX_LINE_CHARS = 16 * 1024;
+  static final int MAX_LISTED_REJECTS = 100;
+
+  static final int EOL = 0, EOF = 1, TOO_LONG = 2;
+
+  static final String TOO_LONG_REASON = "line longer than " + MAX_LINE_CHARS + " chars";
+
+  private UploadLines() {}
+
+  /**
+   * Reads one line into {@code sb} (cleared first) without ever holding more than
+   * MAX_LINE_CHARS; an over-long line is consumed and reported as TOO_LONG.
+   */
+  static int readLine(Reader in, StringBuilder sb) throws IOException {
+    sb.setLength(0);
+    boolean tooLong = false;
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '\n') return tooLong ? TOO_LONG : EOL;
+      if (c == '\r') continue;
+      if (sb.length() < MAX_LINE_CHARS) sb.append((char) c);
+      else tooLong = true;
+    }
+    return tooLong ? TOO_LONG : EOF;
+  }
+
+  /** Rejected lines of one upload: all counted, the first few listed with their reason. */
+  static final class Rejects {
+    private final List<LineReject> listed = new ArrayList<>();
+    private long count;
+    private boolean truncated;
+
+    void add(long line, String reason) {
+      count++;
+      if (listed.size() < MAX_LISTED_REJECTS) listed.add(new LineReject(line, reason));
+      else truncated = true;
+    }
+
+    /** Rows rejected later on (e.g. by the write path) without a line to point at. */
+    void addUnlisted(long n) {
+      count += n;
+    }
+
+    long count() { return count; }
+    List<LineReject> listed() { return listed; }
+    boolean truncated() { return truncated; }
+  }
+}
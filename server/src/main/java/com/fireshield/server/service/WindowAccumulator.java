@@ -0,0 +1,98 @@
+// service/WindowAccumulator.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+import com.fireshield.server.repo.SampleSeriesRepository.ChannelMoments;
+import com.fireshield.server.repo.SampleSeriesRepository.WindowMoments;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates for one metrics window, computed in memory by the hot tier or the archive
+ * scan: row count and time range plus {@link RunningStats} for TVOC, formaldehyde and
+ * benzene. Missing readings are NaN. TVOC also goes into a {@link QuantileSketch} for
+ * percentiles. Mergeable, so each device ring or storage tier can be scanned separately.
+ */
+final class WindowAccumulator {
+  static final int ELEVATED = 0, CRITICAL = 1;   // threshold indexes into tvoc
+
+  final long originMicros;
+  long rows;
+  long minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE;
+  final RunningStats tvoc, ch2o, benzene;
+  final QuantileSketch tvocSketch = new QuantileSketch();
+
+  /** The channels accumulated, in {@link #add} argument order. */
+  static final SampleChannel[] CHANNELS = {SampleChannel.TVOC, SampleChannel.FORMALDEHYDE, SampleChannel.BENZENE};
+
+  /** x for the regression is hours since {@code originMicros}; halves split at {@code splitHours}. */
+  WindowAccumulator(long originMicros, double splitHours, double elevated, double critical) {
+    this(originMicros, new RunningStats(splitHours, elevated, critical),
+        new RunningStats(splitHours), new RunningStats(splitHours));
+  }
+
+  private WindowAccumulator(long originMicros, RunningStats tvoc, RunningStats ch2o, RunningStats benzene) {
+    this.originMicros = originMicros;
+    this.tvoc = tvoc;
+    this.ch2o = ch2o;
+    this.benzene = benzene;
+  }
+
+  /** Per-channel thresholds to ask {@code SampleSeriesRepository.moments} for, matching CHANNELS. */
+  static Map<SampleChannel, double[]> momentSpec(double elevated, double critical) {
+    Map<SampleChannel, double[]> spec = new LinkedHashMap<>();
+    spec.put(SampleChannel.TVOC, new double[]{elevated, critical});
+    spec.put(SampleChannel.FORMALDEHYDE, new double[0]);
+    spec.put(SampleChannel.BENZENE, new double[0]);
+    return spec;
+  }
+
+  /**
+   * An accumulator holding what SQL computed for a window (see momentSpec), to merge with
+   * scanned ones. The TVOC sketch stays empty; percentiles come from the rollups then.
+   */
+  static WindowAccumulator restore(long originMicros, double splitHours, double elevated, double critical,
+                                   WindowMoments m) {
+    WindowAccumulator acc = new WindowAccumulator(originMicros,
+        restore(splitHours, new double[]{elevated, critical}, m.channels().get(SampleChannel.TVOC)),
+        restore(splitHours, new double[0], m.channels().get(SampleChannel.FORMALDEHYDE)),
+        restore(splitHours, new double[0], m.channels().get(SampleChannel.BENZENE)));
+    acc.rows = m.rows();
+    if (m.rows() > 0) {
+      acc.minTs = SampleBatch.toMicros(m.minTs());
+      acc.maxTs = SampleBatch.toMicros(m.maxTs());
+    }
+    return acc;
+  }
+
+  private static RunningStats restore(double split, double[] thresholds, ChannelMoments c) {
+    return RunningStats.restore(split, thresholds, c.n(), c.meanY(), c.syy(), c.min(), c.max(),
+        c.meanX(), c.sxx(), c.sxy(), c.atLeast(), c.firstN(), c.firstSum(), c.secondN(), c.secondSum());
+  }
+
+  void add(long ts, double tvocPpb, double ch2oPpm, double benzenePpm) {
+    rows++;
+    if (ts < minTs) minTs = ts;
+    if (ts > maxTs) maxTs = ts;
+    double x = (ts - originMicros) / 3_600_000_000.0;
+    if (!Double.isNaN(tvocPpb)) {
+      tvoc.add(x, tvocPpb);
+      tvocSketch.add(tvocPpb);
+    }
+    if (!Double.isNaN(ch2oPpm)) ch2o.add(x, ch2oPpm);
+    if (!Double.isNaN(benzenePpm)) benzene.add(x, benzenePpm);
+  }
+
+  WindowAccumulator merge(WindowAccumulator o) {
+    rows += o.rows;
+    minTs = Math.min(minTs, o.minTs);
+    maxTs = Math.max(maxTs, o.maxTs);
+    tvoc.merge(o.tvoc);
+    ch2o.merge(o.ch2o);
+    benzene.merge(o.benzene);
+    tvocSketch.merge(o.tvocSketch);
+    return this;
+  }
+}
@@ -0,0 +1,16 @@
+-- V4__Unique_Sample_Device_Ts.sql
+-- Devices retry uploads after timeouts; store each (device_id, ts) reading exactly once.
+
+-- Drop duplicates already written by retries, keeping the first copy.
+DELETE FROM samples a
+USING samples b
+WHERE a.device_id = b.device_id
+  AND a.ts = b.ts
+  AND a.id > b.id;
+
+-- Ingest uses ON CONFLICT (device_id, ts) DO NOTHING against this constraint.
+ALTER TABLE samples
+  ADD CONSTRAINT uq_samples_device_ts UNIQUE (device_id, ts);
+
+-- The unique index serves the same (device_id, ts) scans in either direction.
+DROP INDEX IF EXISTS idx_samples_device_ts;
@@ -0,0 +1,27 @@
+-- V5__Sample_Rollups.sql
+-- Per-device TVOC aggregates per minute/hour/day bucket, maintained at ingest time
+-- so /series never has to GROUP BY raw samples. Buckets are aligned in UTC.
+-- cnt counts samples that carried a TVOC reading.
+
+create table if not exists sample_rollups (
+  bucket      text             not null,   -- minute | hour | day
+  device_id   uuid             not null references devices(id) on delete cascade,
+  bucket_ts   timestamptz      not null,
+  cnt         bigint           not null,
+  tvoc_sum    double precision not null,
+  tvoc_min    double precision not null,
+  tvoc_max    double precision not null,
+  tvoc_sumsq  double precision not null,
+  primary key (bucket, device_id, bucket_ts)
+);
+create index if not exists idx_sample_rollups_bucket_ts on sample_rollups(bucket, bucket_ts);
+
+-- Seed from what is already stored.
+insert into sample_rollups (bucket, device_id, bucket_ts, cnt, tvoc_sum, tvoc_min, tvoc_max, tvoc_sumsq)
+select b.bucket, s.device_id, date_trunc(b.bucket, s.ts, 'UTC'),
+       count(*), sum(s.tvoc_ppb), min(s.tvoc_ppb), max(s.tvoc_ppb), sum(s.tvoc_ppb * s.tvoc_ppb)
+from samples s
+cross join (values ('minute'), ('hour'), ('day')) as b(bucket)
+where s.tvoc_ppb is not null
+group by b.bucket, s.device_id, date_trunc(b.bucket, s.ts, 'UTC')
+on conflict do nothing;
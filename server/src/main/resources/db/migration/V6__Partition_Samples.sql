@@ -0,0 +1,63 @@
+-- V6__Partition_Samples.sql
+-- Range-partition samples by ts, one partition per UTC day (samples_YYYYMMDD), so
+-- retention drops whole partitions instead of DELETE + vacuum, and windowed queries
+-- only touch the days they cover. The app creates partitions ahead of time and before
+-- writing into a new day (SamplePartitionService); there is no default partition.
+
+-- Creates the partition holding the given UTC day if it does not exist yet.
+create or replace function ensure_sample_partition(p_day date) returns text
+language plpgsql as $$
+declare
+  part text := 'samples_' || to_char(p_day, 'YYYYMMDD');
+begin
+  if to_regclass(part) is null then
+    execute format(
+      'create table if not exists %I partition of samples for values from (%L) to (%L)',
+      part,
+      (p_day::timestamp at time zone 'UTC'),
+      ((p_day + 1)::timestamp at time zone 'UTC'));
+  end if;
+  return part;
+end $$;
+
+-- Move the old heap aside; its index names would clash with the new table's.
+alter table samples rename to samples_legacy;
+alter table samples_legacy rename constraint samples_pkey to samples_legacy_pkey;
+alter table samples_legacy rename constraint uq_samples_device_ts to uq_samples_legacy_device_ts;
+alter sequence samples_id_seq owned by none;
+
+create table samples (
+  id bigint not null default nextval('samples_id_seq'),
+  device_id uuid not null references devices(id) on delete cascade,
+  ts timestamptz not null,
+  tvoc_ppb double precision,
+  voc_index double precision,
+  eco2_ppm double precision,
+  hum_rel double precision,
+  temp_c double precision,
+  formaldehyde_ppm double precision,
+  benzene_ppm double precision,
+  created_at timestamptz not null default now(),
+  -- unique keys on a partitioned table must include the partition key
+  constraint samples_pkey primary key (id, ts),
+  constraint uq_samples_device_ts unique (device_id, ts)
+) partition by range (ts);
+
+-- One partition per day that already has data, plus yesterday .. a week ahead.
+select ensure_sample_partition(d)
+from (
+  select distinct (ts at time zone 'UTC')::date as d from samples_legacy
+  union
+  select generate_series((now() at time zone 'UTC')::date - 1,
+                         (now() at time zone 'UTC')::date + 7,
+                         interval '1 day')::date
+) days;
+
+insert into samples (id, device_id, ts, tvoc_ppb, voc_index, eco2_ppm, hum_rel, temp_c,
+                     formaldehyde_ppm, benzene_ppm, created_at)
+select id, device_id, ts, tvoc_ppb, voc_index, eco2_ppm, hum_rel, temp_c,
+       formaldehyde_ppm, benzene_ppm, created_at
+from samples_legacy;
+
+drop table samples_legacy;
+alter sequence samples_id_seq owned by samples.id;
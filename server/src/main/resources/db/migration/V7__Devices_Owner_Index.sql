@@ -0,0 +1,3 @@
+-- V7__Devices_Owner_Index.sql
+-- Read endpoints resolve the caller's devices by owner on every request.
+create index if not exists idx_devices_owner on devices(owner_id);
@@ -0,0 +1,45 @@
+-- V8__Rollup_Quantile_Sketches.sql
+-- A DDSketch of TVOC per rollup bucket, for p50/p95/p99 without touching raw samples.
+-- Bins are log-spaced with 1% relative accuracy (gamma = 1.01 / 0.99); the sketch is a
+-- jsonb object {"<bin index>": count, ..., "z": count of readings ~0}. Must match
+-- QuantileSketch on the Java side.
+
+-- Bin key for one reading.
+create or replace function dd_index(x double precision) returns text
+language sql immutable as $$
+  select case when x <= 1e-9 then 'z' else ceil(ln(x) / ln(1.01 / 0.99))::int::text end
+$$;
+
+-- Sum of two sketches, bin by bin (used by the ingest upsert).
+create or replace function dd_merge(a jsonb, b jsonb) returns jsonb
+language sql immutable as $$
+  select coalesce(jsonb_object_agg(k, n), '{}'::jsonb)
+  from (
+    select k, sum(v::bigint) as n
+    from (
+      select key as k, value as v from jsonb_each_text(coalesce(a, '{}'::jsonb))
+      union all
+      select key, value from jsonb_each_text(coalesce(b, '{}'::jsonb))
+    ) u
+    group by k
+  ) t
+$$;
+
+alter table sample_rollups add column if not exists tvoc_sketch jsonb not null default '{}'::jsonb;
+
+-- Seed sketches for rollups that already exist.
+update sample_rollups r
+set tvoc_sketch = s.sketch
+from (
+  select bucket, device_id, bucket_ts, jsonb_object_agg(idx, n) as sketch
+  from (
+    select b.bucket, s.device_id, date_trunc(b.bucket, s.ts, 'UTC') as bucket_ts,
+           dd_index(s.tvoc_ppb) as idx, count(*) as n
+    from samples s
+    cross join (values ('minute'), ('hour'), ('day')) as b(bucket)
+    where s.tvoc_ppb is not null
+    group by 1, 2, 3, 4
+  ) bins
+  group by bucket, device_id, bucket_ts
+) s
+where r.bucket = s.bucket and r.device_id = s.device_id and r.bucket_ts = s.bucket_ts;
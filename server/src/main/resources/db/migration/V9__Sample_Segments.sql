@@ -0,0 +1,21 @@
+-- V9__Sample_Segments.sql
+-- Catalog of archived sample segments: one compressed columnar file per device and UTC
+-- day, written by SampleArchiveService before that day's samples partition is dropped.
+-- state: WRITTEN (file and row exist, partition not yet dropped; readers ignore it)
+--        ACTIVE  (partition dropped; the segment is the only copy and is read)
+create table if not exists sample_segments (
+  day         date        not null,
+  device_id   uuid        not null,
+  path        text        not null,   -- relative to app.archive.dir
+  row_count   integer     not null,
+  min_ts      timestamptz not null,
+  max_ts      timestamptz not null,
+  bytes       bigint      not null,
+  state       text        not null default 'WRITTEN',
+  created_at  timestamptz not null default now(),
+  primary key (day, device_id),
+  constraint chk_sample_segments_state check (state in ('WRITTEN', 'ACTIVE'))
+);
+
+-- Reads look segments up by device and time range.
+create index if not exists idx_sample_segments_device_ts on sample_segments(device_id, max_ts);
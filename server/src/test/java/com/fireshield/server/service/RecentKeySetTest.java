@@ -0,0 +1,107 @@
+// service/RecentKeySetTest.java
+package com.fireshield.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RecentKeySet against a plain FIFO model. Evictions delete from the middle of probe
+ * clusters, so a bad backward shift shows up as a key that is lost or never forgotten.
+ */
+class RecentKeySetTest {
+
+  @Test
+  void evictsOldestFirst() {
+    RecentKeySet set = new RecentKeySet(3);
+    assertThat(set.add(10)).isTrue();
+    assertThat(set.add(20)).isTrue();
+    assertThat(set.add(30)).isTrue();
+    assertThat(set.size()).isEqualTo(3);
+
+    assertThat(set.add(40)).isTrue();
+    assertThat(set.size()).isEqualTo(3);
+    assertThat(set.contains(10)).isFalse();
+    assertThat(set.contains(20)).isTrue();
+    assertThat(set.contains(30)).isTrue();
+    assertThat(set.contains(40)).isTrue();
+
+    assertThat(set.add(50)).isTrue();
+    assertThat(set.contains(20)).isFalse();
+  }
+
+  @Test
+  void repeatedKeyIsNotAddedAndKeepsItsPlace() {
+    RecentKeySet set = new RecentKeySet(2);
+    set.add(1);
+    set.add(2);
+    assertThat(set.add(1)).isFalse();   // no refresh: 1 is still the oldest
+    set.add(3);
+    assertThat(set.contains(1)).isFalse();
+    assertThat(set.contains(2)).isTrue();
+    assertThat(set.contains(3)).isTrue();
+  }
+
+  @Test
+  void ignoresSentinelKey() {
+    RecentKeySet set = new RecentKeySet(4);
+    assertThat(set.add(Long.MIN_VALUE)).isFalse();
+    assertThat(set.contains(Long.MIN_VALUE)).isFalse();
+    assertThat(set.size()).isZero();
+  }
+
+  @Test
+  void capacityOfOne() {
+    RecentKeySet set = new RecentKeySet(1);
+    set.add(7);
+    set.add(8);
+    assertThat(set.contains(7)).isFalse();
+    assertThat(set.contains(8)).isTrue();
+    assertThat(set.capacity()).isEqualTo(1);
+  }
+
+  @Test
+  void sequentialTimestampsRollThrough() {
+    // the ingest keys: microsecond timestamps a fixed step apart
+    RecentKeySet set = new RecentKeySet(100);
+    long base = 1_700_000_000_000_000L;
+    for (int i = 0; i < 10_000; i++) set.add(base + i * 1_000_000L);
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(set.contains(base + i * 1_000_000L)).isEqualTo(i >= 9_900);
+    }
+  }
+
+  @Test
+  void matchesFifoModelUnderChurn() {
+    Random rnd = new Random(42);
+    for (int capacity : new int[] { 1, 2, 3, 7, 8, 16, 33 }) {
+      RecentKeySet set = new RecentKeySet(capacity);
+      ArrayDeque<Long> order = new ArrayDeque<>();
+      Set<Long> model = new HashSet<>();
+      // small key range relative to the table: long probe clusters and frequent repeats
+      int range = capacity * 4;
+      for (int step = 0; step < 20_000; step++) {
+        long key = rnd.nextInt(range) - range / 2;
+        boolean expected = !model.contains(key);
+        if (expected) {
+          if (order.size() == capacity) model.remove(order.removeFirst());
+          order.addLast(key);
+          model.add(key);
+        }
+        assertThat(set.add(key)).as("add %d at step %d (capacity %d)", key, step, capacity).isEqualTo(expected);
+        assertThat(set.size()).isEqualTo(order.size());
+        if (step % 64 == 0) {
+          for (long k = -range / 2; k < range - range / 2; k++) {
+            assertThat(set.contains(k)).as("contains %d at step %d (capacity %d)", k, step, capacity)
+                .isEqualTo(model.contains(k));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,191 @@
+// service/SampleFrameReaderTest.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import com.fireshield.server.repo.SampleBatch;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Decoding of the binary upload frame: well-formed frames, frames cut short, and frames
+ * whose bytes don't follow the layout.
+ */
+class SampleFrameReaderTest {
+
+  private static final UUID DEVICE = UUID.fromString("6f1c2d3e-4a5b-4c6d-8e7f-0123456789ab");
+  private static final long BASE_MS = 1_700_000_000_000L;
+  private static final int TVOC = 1 << SampleChannel.TVOC.ordinal();
+  private static final int TEMP = 1 << SampleChannel.TEMP.ordinal();
+
+  @Test
+  void decodesSamplesIntoBatch() throws IOException {
+    Frame f = new Frame(2).sample(0, TVOC | TEMP, 120f, 21.5f).sample(5_000, TVOC, 130f);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+    assertThat(reader.deviceId()).isEqualTo(DEVICE);
+    SampleBatch batch = new SampleBatch(10);
+
+    assertThat(reader.readInto(batch)).isEqualTo(2);
+    assertThat(reader.remaining()).isZero();
+    assertThat(batch.tsMicros(0)).isEqualTo(BASE_MS * 1_000);
+    assertThat(batch.tsMicros(1)).isEqualTo((BASE_MS + 5_000) * 1_000);
+    assertThat(batch.value(0, SampleChannel.TVOC)).isEqualTo(120.0);
+    assertThat(batch.value(0, SampleChannel.TEMP)).isEqualTo(21.5);
+    assertThat(batch.has(1, SampleChannel.TEMP)).isFalse();
+    assertThat(batch.count(SampleBatch.PENDING)).isEqualTo(2);
+  }
+
+  @Test
+  void stopsWhenBatchIsFull() throws IOException {
+    Frame f = new Frame(3).sample(0, TVOC, 1f).sample(1, TVOC, 2f).sample(1, TVOC, 3f);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+
+    assertThat(reader.readInto(new SampleBatch(2))).isEqualTo(2);
+    assertThat(reader.remaining()).isEqualTo(1);
+    assertThat(reader.readInto(new SampleBatch(2))).isEqualTo(1);
+  }
+
+  @Test
+  void truncatedFrameKeepsWholeSamplesOnly() throws IOException {
+    byte[] full = new Frame(2).sample(0, TVOC | TEMP, 1f, 2f).sample(1, TVOC | TEMP, 3f, 4f).bytes();
+    byte[] cut = Arrays.copyOf(full, full.length - 2);   // second sample loses half a float
+    SampleFrameReader reader = SampleFrameReader.open(new ByteArrayInputStream(cut));
+    SampleBatch batch = new SampleBatch(10);
+
+    assertThatThrownBy(() -> reader.readInto(batch)).isInstanceOf(EOFException.class);
+    assertThat(batch.size()).isEqualTo(1);
+    assertThat(reader.remaining()).isEqualTo(1);
+  }
+
+  @Test
+  void truncatedHeader() throws IOException {
+    byte[] cut = Arrays.copyOf(new Frame(0).bytes(), 10);
+    assertThatThrownBy(() -> SampleFrameReader.open(new ByteArrayInputStream(cut)))
+        .isInstanceOf(EOFException.class);
+  }
+
+  @Test
+  void rejectsBytesAfterLastSample() throws IOException {
+    Frame f = new Frame(1).sample(0, TVOC, 1f);
+    f.out.writeByte(0);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+
+    assertThatThrownBy(() -> reader.readInto(new SampleBatch(10)))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class)
+        .hasMessageContaining("after 1 samples");
+  }
+
+  @Test
+  void rejectsUnknownChannelBits() throws IOException {
+    int mask = TVOC | (1 << SampleChannel.count());
+    Frame f = new Frame(1).sample(0, mask, 1f, 2f);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+    SampleBatch batch = new SampleBatch(10);
+
+    assertThatThrownBy(() -> reader.readInto(batch))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class)
+        .hasMessageContaining("channel bits");
+    assertThat(batch.isEmpty()).isTrue();
+  }
+
+  @Test
+  void rejectsTimestampOverflow() throws IOException {
+    Frame f = new Frame(1).sample(Long.MAX_VALUE - BASE_MS + 1, TVOC, 1f);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+
+    assertThatThrownBy(() -> reader.readInto(new SampleBatch(10)))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class)
+        .hasMessageContaining("timestamp out of range");
+  }
+
+  @Test
+  void rejectsTimestampBeyondMicros() throws IOException {
+    Frame f = new Frame(1).sample(Long.MAX_VALUE / 1_000 - BASE_MS + 1, TVOC, 1f);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+
+    assertThatThrownBy(() -> reader.readInto(new SampleBatch(10)))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class);
+  }
+
+  @Test
+  void rejectsOverlongVarint() throws IOException {
+    Frame f = new Frame(1);
+    for (int i = 0; i < 10; i++) f.out.writeByte(0x80);
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+
+    assertThatThrownBy(() -> reader.readInto(new SampleBatch(10)))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class)
+        .hasMessageContaining("varint");
+  }
+
+  @Test
+  void rejectsBadMagicAndVersion() throws IOException {
+    byte[] bytes = new Frame(0).bytes();
+    bytes[0] = 0;
+    assertThatThrownBy(() -> SampleFrameReader.open(new ByteArrayInputStream(bytes)))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class);
+
+    byte[] v2 = new Frame(0).bytes();
+    v2[2] = 2;
+    assertThatThrownBy(() -> SampleFrameReader.open(new ByteArrayInputStream(v2)))
+        .isInstanceOf(SampleFrameReader.MalformedFrameException.class)
+        .hasMessageContaining("version 2");
+  }
+
+  @Test
+  void marksInvalidReadingsFailed() throws IOException {
+    Frame f = new Frame(4)
+        .sample(0, TVOC, -1f)
+        .sample(1, TEMP, Float.NaN)
+        .sample(1, TEMP, Float.POSITIVE_INFINITY)
+        .sample(1, TVOC | TEMP, 0f, -10f);   // zero TVOC and a negative temperature are fine
+    SampleFrameReader reader = SampleFrameReader.open(f.stream());
+    SampleBatch batch = new SampleBatch(10);
+
+    assertThat(reader.readInto(batch)).isEqualTo(4);
+    assertThat(batch.status(0)).isEqualTo(SampleBatch.FAILED);
+    assertThat(batch.status(1)).isEqualTo(SampleBatch.FAILED);
+    assertThat(batch.status(2)).isEqualTo(SampleBatch.FAILED);
+    assertThat(batch.status(3)).isEqualTo(SampleBatch.PENDING);
+  }
+
+  /** Builds a frame by hand, following the layout documented on SampleFrameReader. */
+  private static final class Frame {
+    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(buf);
+
+    Frame(int count) throws IOException {
+      out.writeShort(SampleFrameReader.MAGIC);
+      out.writeByte(SampleFrameReader.VERSION);
+      out.writeLong(DEVICE.getMostSignificantBits());
+      out.writeLong(DEVICE.getLeastSignificantBits());
+      out.writeLong(BASE_MS);
+      out.writeShort(count);
+    }
+
+    Frame sample(long deltaMs, int mask, float... values) throws IOException {
+      long v = (deltaMs << 1) ^ (deltaMs >> 63);
+      while ((v & ~0x7FL) != 0) {
+        out.writeByte((int) ((v & 0x7F) | 0x80));
+        v >>>= 7;
+      }
+      out.writeByte((int) v);
+      out.writeByte(mask);
+      for (float x : values) out.writeFloat(x);
+      return this;
+    }
+
+    byte[] bytes() { return buf.toByteArray(); }
+
+    ByteArrayInputStream stream() { return new ByteArrayInputStream(bytes()); }
+  }
+}
@@ -0,0 +1,197 @@
+// service/SegmentCodecTest.java
+package com.fireshield.server.service;
+
+import com.fireshield.server.domain.SampleChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Round trips through SegmentCodec. Archiving drops the partition once the segment is
+ * written, so anything the decoder gets wrong is lost for good.
+ */
+class SegmentCodecTest {
+
+  private static final int CHANNELS = SampleChannel.count();
+
+  @Test
+  void singleRow() {
+    long[] ts = { 1_700_000_000_123_456L };
+    double[][] rows = { row(1.5) };
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void twoRows() {
+    long[] ts = { 1_700_000_000_000_000L, 1_700_000_010_000_000L };
+    double[][] rows = { row(1.5), row(-2.25) };
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void emptySegment() {
+    byte[] data = new SegmentCodec.Encoder().finish();
+    ByteBuffer buf = ByteBuffer.wrap(data);
+    assertThat(SegmentCodec.header(buf).rows()).isZero();
+    assertThat(SegmentCodec.timestamps(buf)).isEmpty();
+    assertThat(SegmentCodec.channel(buf, SampleChannel.TVOC)).isEmpty();
+  }
+
+  @Test
+  void nanRunsBetweenReadings() {
+    int n = 50;
+    long[] ts = regular(n, 1_000_000);
+    double[][] rows = new double[n][];
+    for (int i = 0; i < n; i++) {
+      // missing at the start, in the middle and at the end; other channels always missing
+      boolean present = (i >= 5 && i < 20) || (i >= 35 && i < 45);
+      rows[i] = row(present ? 100 + i * 0.5 : Double.NaN);
+    }
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void fullWidthXorWindows() {
+    // sign bit and lowest mantissa bit flip together: no leading or trailing zeros
+    double a = Double.longBitsToDouble(0x0000_0000_0000_0001L);
+    double b = Double.longBitsToDouble(0x8000_0000_0000_0000L);
+    double c = Double.longBitsToDouble(0xFFF0_0000_0000_0001L);   // a NaN payload, canonicalised on encode
+    double[] values = { 0.0, a, b, a, -0.0, Double.MAX_VALUE, -Double.MIN_VALUE, c, 1.0, Double.NEGATIVE_INFINITY };
+    long[] ts = regular(values.length, 1_000_000);
+    double[][] rows = new double[values.length][];
+    for (int i = 0; i < values.length; i++) rows[i] = row(values[i]);
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void xorWindowReusedAndWidened() {
+    // small changes reuse the previous window, a bigger one forces a new header
+    double[] values = { 400.0, 400.5, 401.0, 400.5, 1e-300, 1e300, 400.0, 400.0, 400.25 };
+    long[] ts = regular(values.length, 5_000_000);
+    double[][] rows = new double[values.length][];
+    for (int i = 0; i < values.length; i++) rows[i] = row(values[i]);
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void deltaOfDeltaInEveryBucket() {
+    long[] ts = new long[12];
+    long t = 1_700_000_000_000_000L;
+    long[] deltas = {
+        1_000_000,                   // first delta, stored raw
+        1_000_000,                   // dod 0
+        1_000_100,                   // dod 100 (8 bits)
+        1_000_000,                   // dod -100
+        1_005_000,                   // dod 5000 (14 bits)
+        0,                           // equal timestamps: dod -1_005_000 (24 bits)
+        1_000_000,
+        1_000_000 + (1L << 22),      // 24 bits
+        1_000_000 + (1L << 34),      // 36 bits
+        1_000_000 + (1L << 50),      // 64 bits
+        1_000_000,                   // large negative dod back to normal
+    };
+    ts[0] = t;
+    for (int i = 1; i < ts.length; i++) ts[i] = ts[i - 1] + deltas[i - 1];
+    double[][] rows = new double[ts.length][];
+    for (int i = 0; i < ts.length; i++) rows[i] = row(i);
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void negativeTimestamps() {
+    long[] ts = { -5_000_000L, -4_000_000L, -3_999_999L, 0L, 12L };
+    double[][] rows = new double[ts.length][];
+    for (int i = 0; i < ts.length; i++) rows[i] = row(i * 1.25);
+    roundTrip(ts, rows);
+  }
+
+  @Test
+  void randomisedRoundTrip() {
+    Random rnd = new Random(42);
+    for (int run = 0; run < 50; run++) {
+      int n = 1 + rnd.nextInt(2000);
+      long[] ts = new long[n];
+      ts[0] = 1_600_000_000_000_000L + rnd.nextInt(1_000_000);
+      for (int i = 1; i < n; i++) {
+        long step = switch (rnd.nextInt(5)) {
+          case 0 -> 0;
+          case 1 -> 1_000_000 + rnd.nextInt(2_000) - 1_000;
+          case 2 -> rnd.nextInt(1 << 20);
+          case 3 -> 60_000_000L * (1 + rnd.nextInt(100));
+          default -> (long) (rnd.nextDouble() * 86_400_000_000L);
+        };
+        ts[i] = ts[i - 1] + step;
+      }
+      double[][] rows = new double[n][CHANNELS];
+      for (int i = 0; i < n; i++) {
+        for (int c = 0; c < CHANNELS; c++) {
+          rows[i][c] = switch (rnd.nextInt(6)) {
+            case 0 -> Double.NaN;
+            case 1 -> i > 0 ? rows[i - 1][c] : 0.0;
+            case 2 -> Double.longBitsToDouble(rnd.nextLong());
+            case 3 -> -rnd.nextDouble() * 1e6;
+            default -> Math.round(rnd.nextDouble() * 1000) / 4.0;
+          };
+        }
+      }
+      roundTrip(ts, rows);
+    }
+  }
+
+  @Test
+  void rejectsOutOfOrderRows() {
+    SegmentCodec.Encoder enc = new SegmentCodec.Encoder();
+    enc.add(2_000_000, row(1));
+    assertThatThrownBy(() -> enc.add(1_000_000, row(2))).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void rejectsForeignBytes() {
+    assertThatThrownBy(() -> SegmentCodec.header(ByteBuffer.allocate(64)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  // ---------------------------------------------------------------------------
+
+  private static void roundTrip(long[] ts, double[][] rows) {
+    SegmentCodec.Encoder enc = new SegmentCodec.Encoder();
+    for (int i = 0; i < ts.length; i++) enc.add(ts[i], rows[i]);
+    assertThat(enc.rows()).isEqualTo(ts.length);
+    ByteBuffer buf = ByteBuffer.wrap(enc.finish());
+
+    SegmentCodec.Header h = SegmentCodec.header(buf);
+    assertThat(h.rows()).isEqualTo(ts.length);
+    assertThat(h.minTs()).isEqualTo(ts[0]);
+    assertThat(h.maxTs()).isEqualTo(ts[ts.length - 1]);
+    assertThat(SegmentCodec.timestamps(buf)).containsExactly(ts);
+
+    for (SampleChannel ch : SampleChannel.all()) {
+      double[] decoded = SegmentCodec.channel(buf, ch);
+      long[] expected = new long[ts.length], actual = new long[ts.length];
+      for (int i = 0; i < ts.length; i++) {
+        expected[i] = Double.doubleToLongBits(rows[i][ch.ordinal()]);   // NaNs compare canonically
+        actual[i] = Double.doubleToLongBits(decoded[i]);
+      }
+      assertThat(actual).as("channel %s", ch).containsExactly(expected);
+    }
+  }
+
+  /** TVOC set to {@code tvoc}, every other channel missing. */
+  private static double[] row(double tvoc) {
+    double[] r = new double[CHANNELS];
+    Arrays.fill(r, Double.NaN);
+    r[SampleChannel.TVOC.ordinal()] = tvoc;
+    return r;
+  }
+
+  private static long[] regular(int n, long stepMicros) {
+    long[] ts = new long[n];
+    for (int i = 0; i < n; i++) ts[i] = 1_700_000_000_000_000L + i * stepMicros;
+    return ts;
+  }
+}